@@ -0,0 +1,112 @@
+package perceptron;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Writes the input files the benchmarks read their networks from.
+ */
+final class InputFiles
+{
+   
+   private InputFiles()
+   {
+   }
+   
+   
+   /**
+    * Writes an input file that trains a network from random weights on random
+    * training sets, always the same ones for the same network, and saves nothing
+    * while training.
+    * 
+    * @param directory the directory to write the input file and name the output file in
+    * @param layers    the width of each layer, separated by dashes
+    * @param sets      the number of training sets
+    * @param settings  optional settings to add, one per line
+    * @return the input file
+    * @throws IOException if the file cannot be written
+    */
+   static String write(Path directory, String layers, int sets, String... settings) throws IOException
+   {
+      String[] widths = layers.split("-");
+      int values = Integer.parseInt(widths[0]) + Integer.parseInt(widths[widths.length - 1]);
+      Random random = new Random(31L * sets + layers.hashCode());
+      String file = directory.resolve("input.txt").toString();
+      
+      try (PrintWriter pw = new PrintWriter(new File(file)))
+      {
+         pw.println("T");
+         pw.println("R");
+         pw.println(widths.length);
+         pw.println(String.join(" ", widths));
+         pw.println(sets);
+         
+         for (int s = 0; s < sets; s++)
+         {
+            StringBuilder line = new StringBuilder();
+            
+            for (int v = 0; v < values; v++)
+            {
+               line.append(v == 0 ? "" : " ").append(random.nextInt(2));
+            }
+            
+            pw.println(line);
+         } // for (int s = 0; s < sets; s++)
+         
+         pw.println(Integer.MAX_VALUE);
+         pw.println(0.0);
+         pw.println(0.3);
+         pw.println("-1 1");
+         pw.println(Integer.MAX_VALUE);
+         pw.println(directory.resolve("output.txt"));
+         pw.println("none");
+         
+         for (String setting : settings)
+         {
+            pw.println(setting);
+         }
+      } // try (PrintWriter pw = new PrintWriter(new File(file)))
+      
+      return file;
+   } // static String write(Path directory, String layers, int sets, String... settings)
+   
+   
+   /**
+    * Reads a network from an input file written by write().
+    * 
+    * @param input the input file
+    * @return the network
+    */
+   static Perceptron3 read(String input)
+   {
+      Perceptron3 network = new Perceptron3();
+      network.setOutputFileName(Path.of(input).resolveSibling("output.txt").toString());
+      network.readData(input);
+      return network;
+   } // static Perceptron3 read(String input)
+   
+   
+   /**
+    * Deletes a directory and everything in it.
+    * 
+    * @param directory the directory
+    * @throws IOException if something cannot be deleted
+    */
+   static void delete(Path directory) throws IOException
+   {
+      try (Stream<Path> paths = Files.walk(directory))
+      {
+         for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+         {
+            Files.delete(path);
+         }
+      }
+   } // static void delete(Path directory)
+   
+} // final class InputFiles
@@ -0,0 +1,120 @@
+package perceptron;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the main operations of the network for every
+ * combination of layer widths and numbers of training sets. Each combination gets
+ * an input file of random training sets in a temporary directory, which is read
+ * with readData() and trained from randomized weights. Run with -prof gc for the
+ * bytes allocated per operation and per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class NetworkBenchmark
+{
+   @Param({"2-5-5-1", "32-64-32-4", "784-1024-512-10"})
+   public String layers;
+   
+   @Param({"16", "1024"})
+   public int sets;
+   
+   private Path directory;
+   private String input;
+   private String weights;
+   private Perceptron3 network;
+   private Cursor cursor;
+   
+   
+   /**
+    * Writes the input file, reads the network from it and puts the first training
+    * set on the input layer for calculateNode.
+    * 
+    * @throws IOException if the input file cannot be written
+    */
+   @Setup
+   public void setUp() throws IOException
+   {
+      directory = Files.createTempDirectory("perceptron-benchmark");
+      input = InputFiles.write(directory, layers, sets);
+      weights = directory.resolve("weights.txt").toString();
+      network = InputFiles.read(input);
+      cursor = network.trainingData.cursor();
+      cursor.next(network.batchRows, 1);
+      System.arraycopy(network.batchRows, 0, network.nodeCalculations[0], 0, network.numInputs);
+   } // public void setUp()
+   
+   
+   /**
+    * Closes the cursor and deletes the files.
+    * 
+    * @throws IOException if a file cannot be deleted
+    */
+   @TearDown
+   public void tearDown() throws IOException
+   {
+      cursor.close();
+      InputFiles.delete(directory);
+   }
+   
+   
+   @Benchmark
+   public double calculateNode()
+   {
+      network.calculateNode();
+      return network.nodeCalculations[network.numLayers - 1][0];
+   }
+   
+   
+   @Benchmark
+   public double forwardPassBackpropagation()
+   {
+      cursor.next(network.batchRows, 1);
+      network.forwardPass(network.batchRows, 0, 1, network.workspaces[0]);
+      network.backpropagation(network.workspaces[0]);
+      return network.workspaces[0].sampleError;
+   } // public double forwardPassBackpropagation()
+   
+   
+   @Benchmark
+   public double getTotalError()
+   {
+      return network.getTotalError();
+   }
+   
+   
+   @Benchmark
+   public void saveWeights() throws IOException
+   {
+      Files.deleteIfExists(Path.of(weights));
+      network.saveWeights(weights, network.weights, 0);
+   }
+   
+   
+   @Benchmark
+   public double readData()
+   {
+      Perceptron3 reader = InputFiles.read(input);
+      return reader.weights[0][0];
+   }
+   
+} // public class NetworkBenchmark
@@ -0,0 +1,91 @@
+package perceptron;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures training in double and in float32 precision, one training set at a time
+ * and in batches. An operation trains one batch, so the scores of different batch
+ * sizes count different numbers of training sets.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class PrecisionBenchmark
+{
+   @Param({"32-64-32-4", "2-512-512-3"})
+   public String layers;
+   
+   @Param({"double", "float32"})
+   public String precision;
+   
+   @Param({"1", "64"})
+   public int batchSize;
+   
+   private Path directory;
+   private Perceptron3 network;
+   private Cursor cursor;
+   
+   
+   /**
+    * Writes the input file with the precision and batch size and reads the network
+    * from it.
+    * 
+    * @throws IOException if the input file cannot be written
+    */
+   @Setup
+   public void setUp() throws IOException
+   {
+      directory = Files.createTempDirectory("perceptron-benchmark");
+      network = InputFiles.read(InputFiles.write(directory, layers, 1024, "precision " + precision,
+                                                 "batchSize " + batchSize));
+      cursor = network.trainingData.cursor();
+   } // public void setUp()
+   
+   
+   /**
+    * Closes the cursor and deletes the files.
+    * 
+    * @throws IOException if a file cannot be deleted
+    */
+   @TearDown
+   public void tearDown() throws IOException
+   {
+      cursor.close();
+      InputFiles.delete(directory);
+   }
+   
+   
+   @Benchmark
+   public double train()
+   {
+      cursor.next(network.batchRows, batchSize);
+      
+      if (batchSize > 1)
+      {
+         return network.trainBatch(batchSize);
+      }
+      
+      network.forwardPass(network.batchRows, 0, 1, network.workspaces[0]);
+      network.backpropagation(network.workspaces[0]);
+      return network.workspaces[0].sampleError;
+   } // public double train()
+   
+} // public class PrecisionBenchmark
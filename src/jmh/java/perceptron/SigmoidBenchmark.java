@@ -0,0 +1,69 @@
+package perceptron;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the table sigmoid against the exact one over a sweep of SWEEP points
+ * from -20 to 20 per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SigmoidBenchmark
+{
+   private static final int SWEEP = 1024;
+   
+   private final double[] x = new double[SWEEP];
+   
+   
+   @Setup
+   public void setUp()
+   {
+      for (int i = 0; i < x.length; i++)
+      {
+         x[i] = -20.0 + 40.0 * i / x.length;
+      }
+   }
+   
+   
+   @Benchmark
+   public double table()
+   {
+      double sum = 0.0;
+      
+      for (double v : x)
+      {
+         sum += Perceptron3.tableSigmoid(v);
+      }
+      
+      return sum;
+   } // public double table()
+   
+   
+   @Benchmark
+   public double exact()
+   {
+      double sum = 0.0;
+      
+      for (double v : x)
+      {
+         sum += 1.0 / (1.0 + Math.exp(-v));
+      }
+      
+      return sum;
+   } // public double exact()
+   
+} // public class SigmoidBenchmark
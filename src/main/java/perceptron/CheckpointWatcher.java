@@ -0,0 +1,85 @@
+package perceptron;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Watches the checkpoint file for the server. Whenever the file changes, the new
+ * checkpoint is loaded into fresh arrays and checked on this thread, and only a
+ * complete, valid one is published. A checkpoint that fails is reported and left
+ * alone until the file changes again.
+ */
+class CheckpointWatcher implements Runnable
+{
+   private final Perceptron3 network;
+   private final ScoringServer server;
+   private final String checkpointFile;
+   private final int watchMillis;
+   
+   
+   /**
+    * @param network        the network the checkpoints are for, which reads them
+    * @param server         the server to publish new checkpoints to
+    * @param checkpointFile the checkpoint file to watch
+    * @param watchMillis    how often to check the file, in milliseconds
+    */
+   CheckpointWatcher(Perceptron3 network, ScoringServer server, String checkpointFile, int watchMillis)
+   {
+      this.network = network;
+      this.server = server;
+      this.checkpointFile = checkpointFile;
+      this.watchMillis = watchMillis;
+   } // CheckpointWatcher(Perceptron3 network, ScoringServer server, String checkpointFile, int watchMillis)
+   
+   
+   /**
+    * Checks the file every watchMillis until the thread is interrupted. The file
+    * that is already there when watching starts is not loaded.
+    */
+   @Override
+   public void run()
+   {
+      File file = new File(checkpointFile);
+      long modified = file.lastModified();
+      long length = file.length();
+      
+      while (true)
+      {
+         try
+         {
+            Thread.sleep(watchMillis);
+         }
+         catch (InterruptedException e)
+         {
+            return;
+         }
+         
+         if (!file.exists() || (file.lastModified() == modified && file.length() == length))
+         {
+            continue;
+         }
+         
+         modified = file.lastModified();
+         length = file.length();
+         double[][] w = new double[network.weights.length][];
+         
+         for (int n = 0; n < w.length; n++)
+         {
+            w[n] = new double[network.weights[n].length];
+         }
+         
+         try
+         {
+            int iteration = network.readCheckpoint(checkpointFile, w);
+            ScoringServer.ModelVersion published = server.publish(network.predictor(w), checkpointFile, iteration);
+            System.out.println("serving version " + published.version + " from iteration " + iteration);
+         }
+         catch (IOException | RuntimeException e)
+         {
+            System.out.println("checkpoint rejected: " + e.getMessage());
+         }
+      } // while (true)
+      
+   } // public void run()
+   
+} // class CheckpointWatcher implements Runnable
@@ -0,0 +1,22 @@
+package perceptron;
+
+/**
+ * Reads training sets in order, going back to the first one after the last.
+ */
+interface Cursor
+{
+   /**
+    * Copies the next count training sets into rows, one after another.
+    * 
+    * @param rows  the array to fill, at least count training sets long
+    * @param count the number of training sets to read
+    */
+   void next(double[] rows, int count);
+   
+   
+   /**
+    * Releases whatever the cursor holds open.
+    */
+   void close();
+   
+} // interface Cursor
@@ -0,0 +1,159 @@
+package perceptron;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Training sets in a memory-mapped binary dataset. Nothing is parsed or allocated
+ * per training set: opening the file only reads its header, the operating system
+ * pages the values in as they are used, and a cursor copies them in bulk straight
+ * from the mapping. Files larger than one mapping can hold are mapped in regions
+ * of whole training sets.
+ */
+class MappedData implements TrainingData
+{
+   static final int DATASET_MAGIC = 0x44504c4d;
+   static final int DATASET_VERSION = 2;
+   static final int DATASET_HEADER = 32;
+   private static final int DATASET_HEADER_V1 = 24;
+
+   private final String file;
+   private final int width;
+   private final int size;
+   private final int regionRows;
+   private final DoubleBuffer[] doubles;
+   private final FloatBuffer[] floats;
+   
+   
+   /**
+    * Reads the header of the dataset and maps its values.
+    * 
+    * @param file  the dataset
+    * @param width the number of inputs and outputs of each training set
+    * @throws IOException if the file cannot be read or does not fit the network
+    */
+   MappedData(String file, int width) throws IOException
+   {
+      this.file = file;
+      this.width = width;
+      
+      try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ))
+      {
+         ByteBuffer header = ByteBuffer.allocate(DATASET_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+         
+         while (header.hasRemaining() && channel.read(header) >= 0)
+         {
+         }
+         
+         int version = header.getInt(4);
+         long rows = header.getLong(8);
+         int columns = header.getInt(16) + header.getInt(20);
+         int valueBytes = version == 1 ? 8 : header.getInt(24);
+         long start = version == 1 ? DATASET_HEADER_V1 : DATASET_HEADER;
+         
+         if ((version != 1 && version != DATASET_VERSION) || (valueBytes != 4 && valueBytes != 8) || columns != width)
+         {
+            throw new IOException(file + " has version " + version + ", " + valueBytes + "-byte values and " 
+                                  + columns + " values per training set, not " + width);
+         }
+         
+         if (channel.size() != start + valueBytes * rows * width || rows > Integer.MAX_VALUE || rows == 0)
+         {
+            throw new IOException(file + " does not hold the " + rows + " training sets its header gives");
+         }
+         
+         size = (int) rows;
+         long rowBytes = (long) valueBytes * width;
+         regionRows = (int) Math.min(size, Integer.MAX_VALUE / rowBytes);
+         int regions = (size + regionRows - 1) / regionRows;
+         doubles = valueBytes == 8 ? new DoubleBuffer[regions] : null;
+         floats = valueBytes == 4 ? new FloatBuffer[regions] : null;
+         
+         for (int r = 0; r < regions; r++)
+         {
+            long first = (long) r * regionRows;
+            long bytes = Math.min(regionRows, size - first) * rowBytes;
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start + first * rowBytes, bytes)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+            
+            if (valueBytes == 8)
+            {
+               doubles[r] = map.asDoubleBuffer();
+            }
+            else
+            {
+               floats[r] = map.asFloatBuffer();
+            }
+         } // for (int r = 0; r < regions; r++)
+      } // try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ))
+      
+   } // MappedData(String file, int width)
+   
+   
+   @Override
+   public int size()
+   {
+      return size;
+   }
+   
+   
+   /**
+    * Opens a cursor at the first training set. Cursors only read the mapping with
+    * absolute gets, so any number of them can share it.
+    * 
+    * @return the cursor
+    */
+   @Override
+   public Cursor cursor()
+   {
+      return new Cursor()
+      {
+         private int position;
+         
+         
+         @Override
+         public void next(double[] rows, int count)
+         {
+            int copied = 0;
+            
+            while (copied < count)
+            {
+               int region = position / regionRows;
+               int local = position - region * regionRows;
+               int n = Math.min(count - copied, Math.min(regionRows - local, size - position));
+               
+               if (doubles != null)
+               {
+                  doubles[region].get(local * width, rows, copied * width, n * width);
+               }
+               else
+               {
+                  FloatBuffer values = floats[region];
+                  
+                  for (int i = 0; i < n * width; i++)
+                  {
+                     rows[copied * width + i] = values.get(local * width + i);
+                  }
+               }
+               
+               copied += n;
+               position = (position + n) % size;
+            } // while (copied < count)
+            
+         } // public void next(double[] rows, int count)
+         
+         
+         @Override
+         public void close()
+         {
+         }
+      };
+   } // public Cursor cursor()
+   
+} // class MappedData implements TrainingData
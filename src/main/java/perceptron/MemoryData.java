@@ -0,0 +1,54 @@
+package perceptron;
+
+/**
+ * Training sets that were read into memory from the input file.
+ */
+class MemoryData implements TrainingData
+{
+   private final double[][] sets;
+   
+   
+   /**
+    * @param sets the training sets, one per row
+    */
+   MemoryData(double[][] sets)
+   {
+      this.sets = sets;
+   }
+   
+   
+   @Override
+   public int size()
+   {
+      return sets.length;
+   }
+   
+   
+   @Override
+   public Cursor cursor()
+   {
+      return new Cursor()
+      {
+         private int position;
+         
+         
+         @Override
+         public void next(double[] rows, int count)
+         {
+            for (int b = 0; b < count; b++)
+            {
+               double[] set = sets[position];
+               System.arraycopy(set, 0, rows, b * set.length, set.length);
+               position = (position + 1) % sets.length;
+            }
+         } // public void next(double[] rows, int count)
+         
+         
+         @Override
+         public void close()
+         {
+         }
+      };
+   } // public Cursor cursor()
+   
+} // class MemoryData implements TrainingData
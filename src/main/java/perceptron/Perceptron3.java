@@ -0,0 +1,5782 @@
+package perceptron;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+import javax.management.JMException;
+
+/**
+ * Implements a fully connected network with any number of layers. Trains network
+ * using backpropagation.
+ * 
+ * The default configuration file is input.txt. 
+ * The configuration file can be overridden by passing another file path to the command line.
+ *
+ * If no output file name is specified in the configuration file, the default will be used to save the last known weights.
+ * The default output file is output.txt.
+ * 
+ * 
+ * Format of Input File:
+ * R           //R for running, T for training, S for serving
+ * P           //R for randomized initial weights, P for preloaded initial weights
+ * 4           //number of layers, at least 2
+ * 2 100 20 3  //number of units in each layer, one count per layer
+ * 4           //number of training sets
+ * 1 1 1 1 0   //training sets 1-4:
+ * 1 0 0 1 1
+ * 0 1 0 1 1 
+ * 0 0 0 0 0
+ * 500         //maximum number of iterations 
+ * 0.3         //minimum error
+ * 3           //learning rate (lambda)  
+ * -1 1        //minimum weight value and maximum weight value
+ * 6           //number of iterations to pass before weights are saved
+ * out.txt     //the output file that weights will be saved to
+ * read.txt    //the file that the weights will be read from (if initial weights are preloaded)
+ * 
+ * Optional settings may follow the last line, one per line, as a name and a value:
+ * evaluationInterval 100  //iterations between full error sweeps while training (default 1, one epoch with dataFile)
+ * batchSize 32            //training sets per weight update, 1 updates after every set (default 1)
+ * threads 8               //threads that train each batch in parallel shards and sweep the error (default 1)
+ * verbosity sampled       //training sets printed when running: summary, sampled or full (default full)
+ * sampleEvery 1000        //prints one training set in this many when sampled (default 100)
+ * reportFormat csv        //how they are printed: text, csv or json lines (default text)
+ * reportFile run.csv      //prints them to a file instead of the console (default none)
+ * quiet on                //the same as verbosity summary (default off)
+ * backend scalar          //compute backend: scalar, vector or auto (default auto)
+ * checkpointFormat binary //format weights are saved in: text or binary (default text)
+ * checkpointFile w.bin    //the file checkpoints are saved to (default the output file + .weights, or + .bin)
+ * activation relu         //hidden layers: sigmoid, tanh, relu or leakyRelu (default sigmoid)
+ * outputActivation softmax //output layer: any of those or softmax (default sigmoid)
+ * loss crossEntropy       //mse, or crossEntropy with sigmoid or softmax outputs (default mse)
+ * sigmoid table           //sigmoid: exact, or table for a faster approximation (default exact)
+ * optimizer adam          //sgd, momentum, nesterov, rmsprop or adam (default sgd)
+ * momentum 0.9            //momentum, and the first moment decay of adam (default 0.9)
+ * rho 0.9                 //decay of the squared gradient average of rmsprop (default 0.9)
+ * beta2 0.999             //second moment decay of adam (default 0.999)
+ * epsilon 1e-8            //added to the root mean square of rmsprop and adam (default 1e-8)
+ * schedule cosine         //learning rate schedule: constant, step or cosine (default constant)
+ * stepEvery 1000          //steps between learning rate drops of the step schedule (default 1000)
+ * stepFactor 0.5          //what each drop multiplies the learning rate by (default 0.5)
+ * warmup 100              //steps the learning rate ramps up over at the start (default 0)
+ * precision float32       //precision of the training passes: double or float32 (default double)
+ * quantize row            //int8 weights for running and serving: none, or row or layer scales (default none)
+ * telemetry on            //publishes training metrics to JMX as Perceptron3:type=Training (default off)
+ * metricsFile m.csv       //also logs them, as CSV, or JSON lines if the name ends in .json (default none)
+ * metricsMillis 1000      //milliseconds between samples of the metrics (default 1000)
+ * dataFile data.csv       //reads the training sets from a file instead (default none)
+ * validationSplit 0.2     //fraction of the training sets held out for validation, from the end (default 0)
+ * validationFile val.csv  //reads the validation sets from their own data file instead (default none)
+ * validationInterval 500  //iterations between validation evaluations (default 1000)
+ * patience 10             //evaluations without a better validation error before stopping, 0 never (default 0)
+ * 
+ * With a data file the number of training sets in the input file should be 0 and no
+ * rows follow it; the data file supplies them. It is either text, one training set
+ * per line with values separated by commas or spaces and an optional header line, or
+ * a binary dataset. A text file is read in chunks by a prefetching thread each time
+ * the training sets are gone through, so it never has to fit in memory. A binary
+ * dataset is memory mapped, so it opens without being read and is never parsed. It
+ * is little-endian and laid out as:
+ *   int magic, int version (2), long number of training sets, int number of inputs,
+ *   int number of outputs, int bytes per value (8 for doubles, 4 for floats), int 0,
+ *   then the training sets one after another, inputs followed by outputs.
+ * To convert the training sets of an input file, inline or from a text data file:
+ * java -jar target/perceptron.jar -convert input.txt data.bin [float32]
+ * 
+ * The JMH benchmarks in src/jmh/java measure calculateNode, forwardPass with
+ * backpropagation, getTotalError, saveWeights and readData over layer widths and
+ * numbers of training sets (NetworkBenchmark), training a batch in each precision
+ * (PrecisionBenchmark) and the table sigmoid against the exact one
+ * (SigmoidBenchmark). They report operations per second, and with the gc profiler
+ * the bytes allocated per operation and per second:
+ * mvn test-compile exec:exec@jmh -Djmh.args="-prof gc NetworkBenchmark"
+ * 
+ * A step is one weight update: one training set, or one batch. The cosine schedule
+ * brings the learning rate down to 0 over the steps of maxNumberIterations. The state
+ * of the optimizer, its number of steps, the iteration and the running errors are
+ * saved to the checkpoint file + .optimizer with each checkpoint, and read back from
+ * the preloaded weights file + .optimizer when it matches. A run preloaded from a
+ * checkpoint then carries on from that iteration, at the same training set, up to
+ * maxNumberIterations in all, as if it had never stopped.
+ * 
+ * With float32 precision the forward and backward passes of training run on a float
+ * copy of the weights, with float activations and deltas, which halves the memory
+ * they stream through and doubles the values per vector. The weights themselves,
+ * the gradients and the optimizer stay in double, and the optimizer rounds each weight
+ * into the float copy as it updates it. The float gradients are still added to the
+ * double ones once per block, which with a batch size of 1 costs more than float32
+ * saves, so float32 is meant for batches. Total errors,
+ * checkpoints and serving all use the double weights. PrecisionBenchmark compares
+ * the speed of the two precisions.
+ * 
+ * Quantizing stores each weight in one byte, with a scale per node the weights lead
+ * to (row) or one per layer (layer), a little over an eighth of the memory. Each
+ * layer of values is quantized the same way as it enters the weights, the sums are
+ * taken over integers and turned back into doubles for the activation function.
+ * Serving then uses the quantized weights, including those of new checkpoints, and
+ * running compares them with the double weights after the usual report.
+ * 
+ * Telemetry times the phases of training: forward and backward passes, applying
+ * batches, evaluating the total error and taking checkpoints, along with the time
+ * the checkpoint writer spends saving. With batches the passes are timed on each
+ * thread and added up; with single training sets the backward pass includes the
+ * update. Every sample also gives the training sets per second, the latest errors,
+ * the learning rate and the norm of one weight update. Without telemetry none of
+ * this is measured.
+ * 
+ * Running prints the training sets through one buffered report. With verbosity
+ * summary only the totals are printed; sampled prints the first training set and
+ * every sampleEvery after it. The csv and json formats print one line per training
+ * set for other tools to read, and json ends with a line of the totals. The totals
+ * are always printed on the console as well.
+ * 
+ * The validation sets are never trained on. Every validationInterval iterations a
+ * snapshot of the weights is evaluated on them by a background thread while training
+ * carries on, and the weights with the lowest validation error so far are kept. When
+ * training ends, early or not, those weights replace the trained ones before the final
+ * checkpoint. Since the evaluations run behind training, an early stop takes effect a
+ * few iterations after the evaluation that called for it.
+ * 
+ * Serving scores inputs POSTed to /predict on the loopback address, one set per
+ * request as numbers separated by commas or spaces, and answers with the outputs.
+ * Requests that arrive together are run as one batch. /stats reports the number of
+ * requests, the median and 99th percentile latency and the throughput.
+ * port 8080               //the port to serve on, 0 for any free port (default 8080)
+ * maxBatch 32             //the most requests run as one batch (default 32)
+ * maxWaitMicros 200       //the longest a request waits for others to batch with (default 200)
+ * watchMillis 1000        //how often the checkpoint file is checked for new weights, 0 never (default 1000)
+ * 
+ * A new checkpoint is loaded and checked on the watcher thread and then swapped in
+ * whole between two batches, so requests never wait for it or see a mix of weights.
+ * Answers carry the version of the weights in an X-Model-Version header. GET /model
+ * describes the version being served, and POST /rollback goes back to the one before.
+ * Version numbers only ever count up, so a version published after a rollback gets a
+ * new number, and the last ROLLBACK_VERSIONS (8) versions are kept to roll back to.
+ * 
+ * While training, the configuration and training sets are saved to the output file
+ * once, checkpoints of the weights go to the checkpoint file, and the output file +
+ * .manifest names both along with the hash of the training sets and the iteration of
+ * the latest checkpoint. The final weights are also appended to the output file in
+ * the text format.
+ * 
+ * Preloaded weights may be in either format; a binary checkpoint is recognized by its
+ * first four bytes. A binary checkpoint is little-endian and laid out as:
+ * int magic, int version, int number of layers, int padding, long iteration,
+ * long number of weights, long CRC32 of the weight bytes, one int per layer for its
+ * number of units, padding up to a multiple of 8 bytes, then the weights as doubles
+ * in the same order as the text format.
+ * 
+ * 
+ * Table of Contents:
+ * public static Activation activation(String name, boolean fastSigmoid)
+ * public void accumulateGradients(int count, Workspace ws)
+ * public void allocateMemory()
+ * public void applyGradients()
+ * public void applyGradients(int from, int to, double rate)
+ * public static void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n)
+ * public static void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n)
+ * public static void backward(double[] w, int rows, int cols, double[] in, double[] psi, 
+ *                             double[] omega, double[] target, double scale, int count)
+ * public static void backward(float[] w, int rows, int cols, float[] in, float[] psi, 
+ *                             float[] omega, float[] target, float scale, int count)
+ * public void backpropagation(Workspace ws)
+ * public void backwardPass(double[][] target, double scale, int count, Workspace ws)
+ * public void backwardPass32(double[][] target, double scale, int count, Workspace ws)
+ * public double calculateError(double expected, double calculated)
+ * public void calculateNode()
+ * public static double dot(double[] x, int xOff, double[] y, int yOff, int n)
+ * public static float dot(float[] x, int xOff, float[] y, int yOff, int n)
+ * public static int dot(byte[] x, int xOff, byte[] y, int yOff, int n)
+ * public static void dot4(double[] x, int xOff, double[] y, int yOff, int n, double[] out, int oOff)
+ * public static void dot4(float[] x, int xOff, float[] y, int yOff, int n, float[] out, int oOff)
+ * public void echo()
+ * public void forwardPass(double[] rows, int first, int count, Workspace ws)
+ * public void forwardPass32(double[] rows, int first, int count, Workspace ws)
+ * public double getTotalError()
+ * public String hashTrainingSets()
+ * public void holdOutValidation()
+ * public static boolean isBinaryCheckpoint(String file)
+ * public static boolean isBinaryDataset(String file)
+ * public double learningRate(long step)
+ * public static Backend loadBackend(String name)
+ * public static void multiply(double[] w, int rows, int cols, double[] in, double[] out, int count)
+ * public static void multiply(float[] w, int rows, int cols, float[] in, float[] out, int count)
+ * public Optimizer optimizer(String name)
+ * public Predictor predictor()
+ * public Predictor predictor(double[][] w)
+ * public void printWeights()
+ * public int readBinaryWeights(String file, double[][] w)
+ * public int readCheckpoint(String file, double[][] w)
+ * public void readData(String file)
+ * public void readOptimizerState(String file)
+ * public void readSetting(String line)
+ * public int readTextCheckpoint(String file, double[][] w)
+ * public void readTextWeights()
+ * public void roundWeights()
+ * public void runQuantized()
+ * public void runTrainingSet()
+ * public void saveBinaryDataset(String file, boolean float32)
+ * public void saveBinaryWeights(String file, double[][] w, int iteration)
+ * public void saveCheckpoint(double[][] w, double[][][] state, long steps, int iteration, double[] errors)
+ * public void saveControl(String file)
+ * public void saveManifest(int iteration)
+ * public void saveOptimizerState(String file, double[][][] state, long steps, int iteration, double[] errors)
+ * public void saveWeights(String file, double[][] w, int iteration)
+ * public void serve()
+ * public void setOutputFileName (String filename)
+ * public double[] sweep(Report report)
+ * public static double tableSigmoid(double x)
+ * public void train()
+ * public double trainBatch(int count)
+ *
+ * Build with mvn package and run with the incubating vector module, which the vector
+ * backend needs:
+ * java --add-modules jdk.incubator.vector -jar target/perceptron.jar input.txt
+ * Without the module, the scalar backend is used.
+ *
+ * @author Annmaria Antony
+ * @version April 21, 2022
+ */
+public class Perceptron3 
+{
+
+   private static final int COLUMN_BLOCK = 256;
+   private static final int SAMPLE_BLOCK = 16;
+   private static final int MAX_SHARDS = 32;
+   private static final int CHECKPOINT_MAGIC = 0x57504c4d;
+   private static final int CHECKPOINT_VERSION = 1;
+   private static final int CHECKPOINT_CHECKSUM = 32;
+   static final int CHECKPOINT_BUFFER = 1 << 16;
+   static final int SWEEP_ROWS = 256;
+   private static final int SIGMOID_RANGE = 16;
+   private static final int OPTIMIZER_MAGIC = 0x54504f4d;
+   private static final int OPTIMIZER_VERSION = 2;
+   private static final int OPTIMIZER_HEADER = 64;
+   private static final int OPTIMIZER_HEADER_V1 = 40;
+   private static final String[] OPTIMIZERS = {"sgd", "momentum", "nesterov", "rmsprop", "adam"};
+   private static final int SIGMOID_STEPS = 64;
+   private static final double[] SIGMOID_TABLE = sigmoidTable();
+   private static Backend backend = new ScalarBackend();
+
+   int numLayers;
+   private String mode;
+   private int[] numNodes;
+   int numInputs;
+   private int numOutputs;
+   private static int numTrainingSets;
+   private double[][] trainingSets;
+   private int maxNumberIterations;
+   private double minError;
+   private double lambda;
+   private double minWeight;
+   private double maxWeight;
+   double[][] weights;
+   double[][] nodeCalculations;
+   private double[][] originalNodeCalculations;
+   private String preLoad;
+   private int writeFrequency;
+   private String outputFile;
+   private String readFile;
+   private int evaluationInterval;
+   private int batchSize;
+   private int threads;
+   private String backendName;
+   private String checkpointFormat;
+   private String checkpointFile;
+   private String trainingSetHash;
+   private String dataFile;
+   TrainingData trainingData;
+   private double validationSplit;
+   private String validationFile;
+   private int validationInterval;
+   private int patience;
+   private TrainingData validationData;
+   private double[] sweepRows;
+   private Cursor sweepCursor;
+   private Sweep[] sweeps;
+   private String verbosity;
+   private int sampleEvery;
+   private String reportFormat;
+   private String reportFile;
+   private int port;
+   private int maxBatch;
+   private int maxWaitMicros;
+   private int watchMillis;
+   private boolean fastSigmoid;
+   private String hiddenActivation;
+   private String outputActivation;
+   private String lossName;
+   private Activation[] activationFunctions;
+   private Loss loss;
+   private String optimizerName;
+   private double momentum;
+   private double rho;
+   private double beta2;
+   private double epsilon;
+   private String schedule;
+   private int stepEvery;
+   private double stepFactor;
+   private int warmup;
+   private Optimizer optimizer;
+   private int resumeIteration;
+   private double resumeRunningError;
+   private double resumeEpochError;
+   private String precision;
+   private boolean float32;
+   private float[][] weights32;
+   private String quantize;
+   private boolean telemetryEnabled;
+   private String metricsFile;
+   private int metricsMillis;
+   private Telemetry telemetry;
+   double[] batchRows;
+   private int shardRows;
+   Workspace[] workspaces;
+   private ShardTask[] shardTasks;
+   private GradientTask[] gradientTasks;
+   private ForkJoinPool pool;
+   
+   
+   /**
+    * Executes the methods of the perceptron.
+    * 
+    * @param args arguments from the command line
+    */
+   public static void main(String[] args) 
+   {
+      
+      String inputFile = "input.txt";
+      String outputFile = "output.txt";
+      Perceptron3 obj = new Perceptron3();
+
+      if (args.length > 2 && args[0].equals("-convert"))
+      {
+         readDataOrExit(obj, args[1]);
+         
+         try
+         {
+            obj.saveBinaryDataset(args[2], args.length > 3 && args[3].equals("float32"));
+            System.out.println("converted " + numTrainingSets + " training sets to " + args[2]);
+         }
+         catch (IOException e)
+         {
+            e.printStackTrace();
+         }
+         
+         return;
+      } // if (args.length > 2 && args[0].equals("-convert"))
+
+      if (args.length > 0)
+      {
+         inputFile = args[0]; 
+         if (args.length > 1)
+         {
+             outputFile = args[1];
+         }
+      }
+  
+      obj.setOutputFileName(outputFile);
+      readDataOrExit(obj, inputFile);
+      obj.echo();
+      System.out.println();
+
+      try
+      {
+         if (obj.mode.equals("R")) 
+         {
+            obj.runTrainingSet();
+            
+            if (!obj.quantize.equals("none"))
+            {
+               obj.runQuantized();
+            }
+         }
+         else if (obj.mode.equals("S"))
+         {
+            obj.serve();
+         }
+         else 
+         {
+            obj.train();
+         }
+      } // try
+      finally
+      {
+         if (obj.pool != null)
+         {
+            obj.pool.shutdown();
+         }
+      } // finally
+      
+   } // public static void main(String[] args) 
+   
+   
+   /**
+    * Reads the user input file for main. A bad setting or an unreadable file ends
+    * the run with its message and exit status 1, before anything else is done.
+    * 
+    * @param obj  the perceptron to configure
+    * @param file the file with the user input
+    */
+   private static void readDataOrExit(Perceptron3 obj, String file)
+   {
+      try
+      {
+         obj.readData(file);
+      }
+      catch (IllegalArgumentException | UncheckedIOException | NoSuchElementException e)
+      {
+         System.err.println(file + ": " + e.getMessage());
+         System.exit(1);
+      }
+      
+   } // private static void readDataOrExit(Perceptron3 obj, String file)
+   
+   
+   /**
+    * Allocates array space in memory. The weights between layer n and layer n + 1
+    * are stored in one flat array, weights[n], holding numNodes[n] rows of
+    * numNodes[n + 1] weights each. The weight from node j of layer n to node k of
+    * layer n + 1 is at weights[n][j * numNodes[n + 1] + k].
+    */
+   public void allocateMemory()
+   {
+       
+       trainingSets = new double[numTrainingSets][numInputs + numOutputs];
+       weights = new double[numLayers - 1][];
+       nodeCalculations = new double[numLayers][];
+       originalNodeCalculations = new double[numLayers][];
+       
+       for (int n = 0; n < numLayers; n++)
+       {
+          nodeCalculations[n] = new double[numNodes[n]];
+          originalNodeCalculations[n] = new double[numNodes[n]];
+          
+          if (n < numLayers - 1)
+          {
+             weights[n] = new double[numNodes[n] * numNodes[n + 1]];
+          }
+       } // for (int n = 0; n < numLayers; n++)
+       
+   } // public void allocateMemory()
+
+   
+   /**
+    * Echoes the configuration of the perceptron. Prints to the terminal.
+    */
+   public void echo() 
+   {
+      
+      System.out.println("CONFIGURATION:");
+      System.out.println();
+      System.out.println("number of layers: " + numLayers);
+      System.out.print("number of nodes in each layer: ");
+
+      for (int a = 0; a < numLayers; a++) 
+      {
+         System.out.print(numNodes[a] + " ");
+      } 
+
+      System.out.println();
+      System.out.println("number of inputs: " + numInputs);
+      System.out.println("number of outputs: " + numOutputs);
+      System.out.println("number of training sets: " + numTrainingSets);
+      System.out.println();
+      System.out.println("training sets: " + (dataFile == null ? "" : "streamed from " + dataFile));
+
+      for (int b = 0; b < trainingSets.length; b++) 
+      {
+         
+         for (int c = 0; c < numInputs + numOutputs; c++) 
+         {
+            System.out.print(trainingSets[b][c] + " ");
+         } 
+         
+         System.out.println();
+         
+      } // for (int b = 0; b < trainingSets.length; b++)
+
+      System.out.println();
+      System.out.println("maximum number of iterations: " + maxNumberIterations);
+      System.out.println("minimum error threshold: " + minError);
+      System.out.println("learning factor (lambda): " + lambda);
+      System.out.println("minimum weight: " + minWeight);
+      System.out.println("maximum weight: " + maxWeight);
+      System.out.println("evaluation interval: " + evaluationInterval);
+      System.out.println("batch size: " + batchSize);
+      System.out.println("threads: " + threads);
+      System.out.println("compute backend: " + backend.name());
+      System.out.println("sigmoid: " + (fastSigmoid ? "table" : "exact"));
+      System.out.println("precision: " + (float32 ? "float32" : "double"));
+      
+      if (float32 && batchSize == 1 && mode.equals("T"))
+      {
+         System.out.println("warning: float32 adds a pass over the gradients for every training set with "
+                            + "batch size 1, which trains slower than double");
+      }
+      
+      System.out.println("quantize: " + quantize);
+      System.out.println("telemetry: " + (telemetryEnabled ? "on, every " + metricsMillis + " ms" 
+                         + (metricsFile == null ? "" : ", to " + metricsFile) : "off"));
+      System.out.println("report: " + verbosity + (verbosity.equals("sampled") ? " every " + sampleEvery : "") 
+                         + ", " + reportFormat + (reportFile == null ? "" : ", to " + reportFile));
+      System.out.println("activation: " + hiddenActivation + ", output activation: " + outputActivation 
+                         + ", loss: " + lossName);
+      System.out.println("checkpoint format: " + checkpointFormat);
+      System.out.println();
+      System.out.println("initial weights: ");
+      
+   } // public void echo()
+
+   
+   /**
+    * Prints the configuration of the perceptron to a file.
+    * 
+    * @param file the file to print to
+    */
+   public void saveControl(String file) 
+   {
+      
+       try 
+       {
+           PrintWriter pw = new PrintWriter(new File(file));
+           pw.println("CONFIGURATION:");
+           pw.println();
+           pw.println("number of layers: " + numLayers);
+           pw.print("number of nodes in each layer: ");
+
+           for (int a = 0; a < numLayers; a++) 
+           {
+              pw.print(numNodes[a] + " ");
+           } 
+
+           pw.println();
+           pw.println("number of inputs: " + numInputs);
+           pw.println("number of outputs: " + numOutputs);
+           pw.println("number of training sets: " + numTrainingSets);
+           pw.println("training set hash: " + trainingSetHash);
+           pw.println();
+           pw.println("training sets: " + (dataFile == null ? "" : "streamed from " + dataFile));
+
+           for (int b = 0; b < trainingSets.length; b++) 
+           {
+              
+              for (int c = 0; c < numInputs + numOutputs; c++) 
+              {
+                  pw.print(trainingSets[b][c] + " ");
+              } 
+              
+              pw.println();
+              
+           } // for (int b = 0; b < trainingSets.length; b++)
+
+           pw.println();
+           pw.println("maximum number of iterations: " + maxNumberIterations);
+           pw.println("minimum error threshold: " + minError);
+           pw.println("learning factor (lambda): " + lambda);
+           pw.println("minimum weight: " + minWeight);
+           pw.println("maximum weight: " + maxWeight);
+           pw.println("evaluation interval: " + evaluationInterval);
+           pw.println("batch size: " + batchSize);
+           pw.println("threads: " + threads);
+           pw.println("compute backend: " + backend.name());
+           pw.println("sigmoid: " + (fastSigmoid ? "table" : "exact"));
+           pw.println("activation: " + hiddenActivation + ", output activation: " + outputActivation 
+                      + ", loss: " + lossName);
+           pw.println("precision: " + precision);
+           pw.println("quantize: " + quantize);
+           pw.println("telemetry: " + (telemetryEnabled ? "on" : "off") + ", metrics file: " + metricsFile);
+           pw.println("report: " + verbosity + ", " + reportFormat + ", report file: " + reportFile);
+           pw.println("optimizer: " + optimizerName + ", schedule: " + schedule + ", warmup: " + warmup);
+           pw.println("checkpoint format: " + checkpointFormat);
+      
+           pw.println();
+           pw.close();
+       } // try
+       catch (Exception e) 
+       {
+           System.out.println("Exception" + e.toString());
+       }
+       
+   } // public void saveControl(String file)
+   
+   
+   /**
+    * Builds a predictor from a copy of the current weights, which keeps working
+    * unchanged however this network goes on training.
+    * 
+    * @return the predictor
+    */
+   public Predictor predictor()
+   {
+      return predictor(weights);
+   }
+   
+   
+   /**
+    * Builds a predictor from a copy of the given weights, quantized to int8 if the
+    * quantize setting asks for it.
+    * 
+    * @param w the weights, shaped like weights
+    * @return the predictor
+    */
+   public Predictor predictor(double[][] w)
+   {
+      Predictor predictor = new Predictor(numNodes, w, activationFunctions);
+      return quantize.equals("none") ? predictor : predictor.quantize(quantize.equals("layer"));
+   }
+   
+   
+   /**
+    * Prints the weights and labels them by their indices. Index n refers to the
+    * layer of the weight. Index j refers to the index of the node the weight edge
+    * branches off from. Index k refers to the index of the node the weight edge
+    * connects to. They are printed on the console through a report, in the report
+    * format.
+    */
+   public void printWeights() 
+   {
+      Report report = new Report();
+ 
+      for (int n = 0; n < numLayers - 1; n++) 
+      {
+         
+         for (int j = 0; j < numNodes[n]; j++) 
+         {
+            
+            for (int k = 0; k < numNodes[n+1]; k++) 
+            {
+               report.weight(n, j, k, weights[n][j * numNodes[n + 1] + k]);
+            } // for (int k = 0; k < numNodes[n+1]; k++)
+            
+         } // for (int j = 0; j < numNodes[n]; j++)
+         
+      } // for (int n = 0; n < numLayers - 1; n++)
+      
+      report.close();
+
+   } // public void printWeights() 
+   
+   
+   /**
+    * Saves a checkpoint of the weights to the checkpoint file in the configured
+    * format, then points the manifest at it. A checkpoint holds only the iteration and
+    * the weights; the configuration and training sets are saved once per run by
+    * saveControl(). The state and step count of the optimizer and the running errors
+    * are saved next to the checkpoint, so a run resumed from it continues exactly.
+    * Each file is written under a temporary name and then renamed over the old one,
+    * so a reader never sees a partly written checkpoint.
+    * 
+    * @param w         the weights to save
+    * @param state     the state buffers of the optimizer, shaped like the weights
+    * @param steps     the number of steps the optimizer has taken
+    * @param iteration the iteration the weights were reached at
+    * @param errors    the running error of the current epoch and the error of the last one
+    */
+   public void saveCheckpoint(double[][] w, double[][][] state, long steps, int iteration, double[] errors)
+   {
+       String temporary = checkpointFile + ".tmp";
+       
+       try
+       {
+           if (checkpointFormat.equals("binary"))
+           {
+               saveBinaryWeights(temporary, w, iteration);
+           }
+           else
+           {
+               Files.deleteIfExists(Paths.get(temporary));
+               saveWeights(temporary, w, iteration);
+           }
+           
+           replaceFile(temporary, checkpointFile);
+           saveOptimizerState(checkpointFile + ".optimizer", state, steps, iteration, errors);
+           
+           saveManifest(iteration);
+       } // try
+       catch (IOException e)
+       {
+           System.out.println("Exception" + e.toString());
+       }
+       
+   } // public void saveCheckpoint(double[][] w, double[][][] state, long steps, int iteration, double[] errors)
+   
+   
+   /**
+    * Saves the state of the optimizer and the position of training in little-endian
+    * binary: a 64 byte header of magic, version, optimizer, number of buffers, steps,
+    * iteration, running error of the current epoch, error of the last epoch, number of
+    * values and a CRC32 of the values, followed by the buffers one layer at a time.
+    * The file is written under a temporary name and then renamed over the old one.
+    * 
+    * @param file      the name of the file
+    * @param state     the state buffers, shaped like the weights
+    * @param steps     the number of steps the optimizer has taken
+    * @param iteration the iteration the state was reached at
+    * @param errors    the running error of the current epoch and the error of the last one
+    * @throws IOException if the file cannot be written
+    */
+   public void saveOptimizerState(String file, double[][][] state, long steps, int iteration, double[] errors) 
+          throws IOException
+   {
+       long count = 0;
+       
+       for (double[][] buffer : state)
+       {
+           for (double[] layer : buffer)
+           {
+               count += layer.length;
+           }
+       }
+       
+       ByteBuffer values = ByteBuffer.allocate((int) (8 * count)).order(ByteOrder.LITTLE_ENDIAN);
+       
+       for (double[][] buffer : state)
+       {
+           for (double[] layer : buffer)
+           {
+               values.asDoubleBuffer().put(layer);
+               values.position(values.position() + 8 * layer.length);
+           }
+       }
+       
+       CRC32 crc = new CRC32();
+       crc.update(values.array());
+       ByteBuffer header = ByteBuffer.allocate(OPTIMIZER_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+       header.putInt(OPTIMIZER_MAGIC).putInt(OPTIMIZER_VERSION);
+       header.putInt(Arrays.asList(OPTIMIZERS).indexOf(optimizer.name)).putInt(state.length);
+       header.putLong(steps).putLong(iteration).putDouble(errors[0]).putDouble(errors[1]);
+       header.putLong(count).putLong(crc.getValue());
+       
+       try (FileOutputStream out = new FileOutputStream(file + ".tmp"))
+       {
+           out.write(header.array());
+           out.write(values.array());
+       }
+       
+       replaceFile(file + ".tmp", file);
+       
+   } // public void saveOptimizerState(String file, double[][][] state, long steps, int iteration, double[] errors)
+   
+   
+   /**
+    * Reads the state of the optimizer saved by saveOptimizerState(), so that a run
+    * preloaded from a checkpoint continues with the same velocities, moments and
+    * learning rate, from the same iteration and with the same running errors. State
+    * saved by a different optimizer or for differently shaped weights is ignored, and
+    * training starts fresh. A file of version 1 holds no iteration, so training starts
+    * from the first training set with the saved optimizer state.
+    * 
+    * @param file the name of the file
+    * @throws IOException if the file cannot be read or is corrupt
+    */
+   public void readOptimizerState(String file) throws IOException
+   {
+       ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Paths.get(file))).order(ByteOrder.LITTLE_ENDIAN);
+       
+       if (in.remaining() < OPTIMIZER_HEADER_V1 || in.getInt() != OPTIMIZER_MAGIC)
+       {
+           throw new IOException(file + " is not an optimizer state file");
+       }
+       
+       int version = in.getInt();
+       
+       if ((version != 1 && version != OPTIMIZER_VERSION) 
+           || in.remaining() < (version == 1 ? OPTIMIZER_HEADER_V1 : OPTIMIZER_HEADER) - 8)
+       {
+           throw new IOException(file + " has unknown version " + version);
+       }
+       
+       int id = in.getInt();
+       int buffers = in.getInt();
+       long steps = in.getLong();
+       long iteration = version == 1 ? 0 : in.getLong();
+       double runningError = version == 1 ? 0.0 : in.getDouble();
+       double epochError = version == 1 ? 0.0 : in.getDouble();
+       long count = in.getLong();
+       long checksum = in.getLong();
+       long expected = 0;
+       
+       for (double[] layer : weights)
+       {
+           expected += layer.length;
+       }
+       
+       if (id < 0 || id >= OPTIMIZERS.length || !OPTIMIZERS[id].equals(optimizer.name) 
+           || buffers != optimizer.state.length || count != buffers * expected)
+       {
+           System.out.println("optimizer state in " + file + " does not match, starting fresh");
+           return;
+       }
+       
+       if (in.remaining() != 8 * count)
+       {
+           throw new IOException(file + " is truncated");
+       }
+       
+       CRC32 crc = new CRC32();
+       crc.update(in.duplicate());
+       
+       if (crc.getValue() != checksum)
+       {
+           throw new IOException(file + " fails its checksum");
+       }
+       
+       for (double[][] buffer : optimizer.state)
+       {
+           for (double[] layer : buffer)
+           {
+               in.asDoubleBuffer().get(layer);
+               in.position(in.position() + 8 * layer.length);
+           }
+       }
+       
+       optimizer.steps = steps;
+       resumeIteration = (int) iteration;
+       resumeRunningError = runningError;
+       resumeEpochError = epochError;
+       
+   } // public void readOptimizerState(String file)
+   
+   
+   /**
+    * Saves the manifest that links the configuration of the run to its latest
+    * checkpoint. The manifest is named after the output file with .manifest added,
+    * and holds one name and value per line, like the optional settings.
+    * 
+    * @param iteration the iteration of the latest checkpoint
+    * @throws IOException if the manifest cannot be written
+    */
+   public void saveManifest(int iteration) throws IOException
+   {
+       String manifest = outputFile + ".manifest";
+       PrintWriter pw = new PrintWriter(new File(manifest + ".tmp"));
+       pw.println("configuration " + outputFile);
+       pw.println("trainingSetHash " + trainingSetHash);
+       pw.println("checkpoint " + checkpointFile);
+       pw.println("checkpointFormat " + checkpointFormat);
+       pw.println("iteration " + iteration);
+       pw.println("optimizerState " + checkpointFile + ".optimizer");
+       
+       pw.close();
+       
+       if (pw.checkError())
+       {
+           throw new IOException("could not write " + manifest);
+       }
+       
+       replaceFile(manifest + ".tmp", manifest);
+       
+   } // public void saveManifest(int iteration)
+   
+   
+   /**
+    * Hashes the training sets, so that a checkpoint can be matched to the data it
+    * was trained on without saving the data again.
+    * 
+    * @return the SHA-256 hash of the training set values, in hexadecimal
+    */
+   public String hashTrainingSets()
+   {
+       try
+       {
+           MessageDigest digest = MessageDigest.getInstance("SHA-256");
+           int width = numInputs + numOutputs;
+           ByteBuffer buffer = ByteBuffer.allocate(8 * SWEEP_ROWS * width).order(ByteOrder.LITTLE_ENDIAN);
+           
+           for (int a = 0; a < numTrainingSets; a += SWEEP_ROWS)
+           {
+               int count = Math.min(SWEEP_ROWS, numTrainingSets - a);
+               sweepCursor.next(sweepRows, count);
+               buffer.clear();
+               buffer.asDoubleBuffer().put(sweepRows, 0, count * width);
+               digest.update(buffer.array(), 0, 8 * count * width);
+           }
+           
+           StringBuilder hex = new StringBuilder();
+           
+           for (byte b : digest.digest())
+           {
+               hex.append(String.format("%02x", b));
+           }
+           
+           return hex.toString();
+       } // try
+       catch (NoSuchAlgorithmException e)
+       {
+           return "unavailable";
+       }
+       
+   } // public String hashTrainingSets()
+   
+   
+   /**
+    * Renames a file over another one, atomically where the file system allows it.
+    * 
+    * @param from the file to rename
+    * @param to   the file to replace
+    * @throws IOException if the file cannot be renamed
+    */
+   private static void replaceFile(String from, String to) throws IOException
+   {
+       try
+       {
+           Files.move(Paths.get(from), Paths.get(to), StandardCopyOption.ATOMIC_MOVE, 
+                      StandardCopyOption.REPLACE_EXISTING);
+       }
+       catch (AtomicMoveNotSupportedException e)
+       {
+           Files.move(Paths.get(from), Paths.get(to), StandardCopyOption.REPLACE_EXISTING);
+       }
+   }
+   
+   
+   /**
+    * Appends weights to a file in the text format.
+    * 
+    * @param file      the file to append to
+    * @param w         the weights to save
+    * @param iteration the iteration the weights were reached at
+    */
+   public void saveWeights(String file, double[][] w, int iteration) 
+   {
+       try 
+       {
+           PrintWriter pw = new PrintWriter(new FileOutputStream(new File(file), true));
+           pw.println("***WEIGHTS***");
+           pw.println("iteration = " + iteration);
+           
+           for (int n = 0; n < numLayers - 1; n++) 
+           {
+               for (int j = 0; j < numNodes[n]; j++) 
+               {
+                   for (int i = 0; i < numNodes[n + 1]; i++) 
+                   {
+                       pw.println( w[n][j * numNodes[n + 1] + i]);
+                   } // for (int i = 0; i < numNodes[n + 1]; i++)
+                   
+               } // for (int j = 0; j < numNodes[n]; j++)
+               
+           } // for (int n = 0; n < numLayers - 1; n++)
+           
+           pw.println();
+           pw.close();
+       } // try
+       catch (Exception e) 
+       {
+           System.out.println("Exception" + e.toString());
+       }
+       
+   } // public void saveWeights(String file, double[][] w, int iteration)
+   
+   
+   /**
+    * Saves the weights as a binary checkpoint. The header is written first with an
+    * empty checksum, the weights follow in blocks through one reused buffer, and the
+    * checksum is filled in at the end.
+    * 
+    * @param file      the file to save to
+    * @param w         the weights to save
+    * @param iteration the iteration the weights were reached at
+    * @throws IOException if the file cannot be written
+    */
+   public void saveBinaryWeights(String file, double[][] w, int iteration) throws IOException
+   {
+       ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKPOINT_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+       CRC32 crc = new CRC32();
+       long count = 0;
+       
+       for (int n = 0; n < numLayers - 1; n++)
+       {
+           count += w[n].length;
+       }
+       
+       try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, 
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+       {
+           buffer.putInt(CHECKPOINT_MAGIC).putInt(CHECKPOINT_VERSION).putInt(numLayers).putInt(0);
+           buffer.putLong(iteration).putLong(count).putLong(0L);
+           
+           for (int n = 0; n < numLayers; n++)
+           {
+               buffer.putInt(numNodes[n]);
+           }
+           
+           while (buffer.position() < checkpointHeaderSize(numLayers))
+           {
+               buffer.put((byte) 0);
+           }
+           
+           buffer.flip();
+           
+           while (buffer.hasRemaining())
+           {
+               channel.write(buffer);
+           }
+           
+           for (int n = 0; n < numLayers - 1; n++)
+           {
+               for (int i = 0; i < w[n].length; i += buffer.capacity() / 8)
+               {
+                   int length = Math.min(buffer.capacity() / 8, w[n].length - i);
+                   buffer.clear();
+                   buffer.asDoubleBuffer().put(w[n], i, length);
+                   buffer.limit(length * 8);
+                   crc.update(buffer);
+                   buffer.rewind();
+                   
+                   while (buffer.hasRemaining())
+                   {
+                       channel.write(buffer);
+                   }
+               } // for (int i = 0; i < w[n].length; i += buffer.capacity() / 8)
+               
+           } // for (int n = 0; n < numLayers - 1; n++)
+           
+           buffer.clear();
+           buffer.putLong(crc.getValue()).flip();
+           channel.write(buffer, CHECKPOINT_CHECKSUM);
+       } // try
+       
+   } // public void saveBinaryWeights(String file, double[][] w, int iteration)
+   
+   
+   /**
+    * Finds the size of the header of a binary checkpoint.
+    * 
+    * @param layers the number of layers of the network
+    * @return the number of bytes before the first weight
+    */
+   private static int checkpointHeaderSize(int layers)
+   {
+       return (CHECKPOINT_CHECKSUM + 8 + 4 * layers + 7) / 8 * 8;
+   }
+   
+   
+   /**
+    * Checks whether a file is a binary checkpoint by its first four bytes.
+    * 
+    * @param file the file to check
+    * @return true if the file is a binary checkpoint
+    * @throws IOException if the file cannot be read
+    */
+   public static boolean isBinaryCheckpoint(String file) throws IOException
+   {
+       Path path = Paths.get(file);
+       
+       if (!Files.isRegularFile(path) || Files.size(path) < 4)
+       {
+           return false;
+       }
+       
+       try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+       {
+           ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+           
+           while (magic.hasRemaining() && channel.read(magic) >= 0)
+           {
+           }
+           
+           return magic.getInt(0) == CHECKPOINT_MAGIC;
+       }
+       
+   } // public static boolean isBinaryCheckpoint(String file)
+   
+   
+   /**
+    * Loads the weights from a binary checkpoint. The file is memory mapped, checked
+    * against the topology and checksum, and copied straight into the weight arrays.
+    * 
+    * @param file the checkpoint to load
+    * @param w    the weight arrays to fill, shaped like weights
+    * @return the iteration the checkpoint was saved at
+    * @throws IOException if the file cannot be read or does not fit this network
+    */
+   public int readBinaryWeights(String file, double[][] w) throws IOException
+   {
+       try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ))
+       {
+           MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+           map.order(ByteOrder.LITTLE_ENDIAN);
+           
+           if (map.getInt(0) != CHECKPOINT_MAGIC || map.getInt(4) != CHECKPOINT_VERSION)
+           {
+               throw new IOException(file + " is not a version " + CHECKPOINT_VERSION + " checkpoint");
+           }
+           
+           int layers = map.getInt(8);
+           boolean matches = layers == numLayers;
+           
+           for (int n = 0; matches && n < numLayers; n++)
+           {
+               matches = map.getInt(CHECKPOINT_CHECKSUM + 8 + 4 * n) == numNodes[n];
+           }
+           
+           if (!matches)
+           {
+               throw new IOException(file + " was saved from a network with different layers");
+           }
+           
+           int headerSize = checkpointHeaderSize(layers);
+           long count = map.getLong(24);
+           
+           if (channel.size() != headerSize + 8 * count)
+           {
+               throw new IOException(file + " should hold " + count + " weights");
+           }
+           
+           CRC32 crc = new CRC32();
+           map.position(headerSize);
+           crc.update(map);
+           
+           if (crc.getValue() != map.getLong(CHECKPOINT_CHECKSUM))
+           {
+               throw new IOException(file + " failed its checksum");
+           }
+           
+           map.position(headerSize);
+           DoubleBuffer doubles = map.asDoubleBuffer();
+           
+           for (int n = 0; n < numLayers - 1; n++)
+           {
+               doubles.get(w[n]);
+           }
+           
+           return (int) map.getLong(16);
+       } // try
+       
+   } // public int readBinaryWeights(String file, double[][] w)
+   
+   
+   /**
+    * Loads the weights from a checkpoint in the text format of saveWeights(). Unlike
+    * readTextWeights(), every weight has to be in the file.
+    * 
+    * @param file the checkpoint to load
+    * @param w    the weight arrays to fill, shaped like weights
+    * @return the iteration the checkpoint was saved at
+    * @throws IOException if the file cannot be read or does not hold every weight
+    */
+   public int readTextCheckpoint(String file, double[][] w) throws IOException
+   {
+       try (BufferedReader reader = new BufferedReader(new FileReader(file), CHECKPOINT_BUFFER))
+       {
+           String line = reader.readLine();
+           
+           while (line != null && !line.equals("***WEIGHTS***"))
+           {
+               line = reader.readLine();
+           }
+           
+           line = line == null ? null : reader.readLine();
+           
+           if (line == null || !line.startsWith("iteration = "))
+           {
+               throw new IOException(file + " has no weights");
+           }
+           
+           int iteration = Integer.parseInt(line.substring("iteration = ".length()).trim());
+           
+           for (int n = 0; n < numLayers - 1; n++)
+           {
+               for (int i = 0; i < w[n].length; i++)
+               {
+                   line = reader.readLine();
+                   
+                   if (line == null || line.isEmpty())
+                   {
+                       throw new IOException(file + " is missing weights of layer " + n);
+                   }
+                   
+                   w[n][i] = Double.parseDouble(line);
+               }
+           } // for (int n = 0; n < numLayers - 1; n++)
+           
+           return iteration;
+       } // try
+       catch (NumberFormatException e)
+       {
+           throw new IOException(file + " holds a weight that is not a number: " + e.getMessage());
+       }
+       
+   } // public int readTextCheckpoint(String file, double[][] w)
+   
+   
+   /**
+    * Loads a checkpoint in either format and checks that every weight is finite.
+    * 
+    * @param file the checkpoint to load
+    * @param w    the weight arrays to fill, shaped like weights
+    * @return the iteration the checkpoint was saved at
+    * @throws IOException if the checkpoint cannot be read, does not fit this network
+    *                     or holds a weight that is not finite
+    */
+   public int readCheckpoint(String file, double[][] w) throws IOException
+   {
+       int iteration = isBinaryCheckpoint(file) ? readBinaryWeights(file, w) : readTextCheckpoint(file, w);
+       
+       for (int n = 0; n < numLayers - 1; n++)
+       {
+           for (int i = 0; i < w[n].length; i++)
+           {
+               if (!Double.isFinite(w[n][i]))
+               {
+                   throw new IOException(file + " holds a weight of " + w[n][i]);
+               }
+           }
+       } // for (int n = 0; n < numLayers - 1; n++)
+       
+       return iteration;
+       
+   } // public int readCheckpoint(String file, double[][] w)
+   
+   
+   /**
+    * Serves the network over HTTP on the loopback address until the process is
+    * stopped, then prints the statistics of the server. Unless watchMillis is 0, the
+    * checkpoint file is watched and every new checkpoint is served as it appears.
+    */
+   public void serve()
+   {
+      try
+      {
+         String source = preLoad.equals("R") ? "random" : readFile;
+         ScoringServer server = new ScoringServer(predictor(), source, port, maxBatch, maxWaitMicros);
+         Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(server.stats())));
+         System.out.println("serving on http://127.0.0.1:" + server.port() + "/predict, statistics at /stats");
+         
+         if (watchMillis > 0)
+         {
+            Runnable watching = new CheckpointWatcher(this, server, checkpointFile, watchMillis);
+            Thread watcher = new Thread(watching, "checkpoint watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+            System.out.println("watching " + checkpointFile + " for new checkpoints");
+         }
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+      
+   } // public void serve()
+   
+   
+   /**
+    * Sets the output file name.
+    * 
+    * @param filename the name of the file
+    */
+   public void setOutputFileName (String filename)
+   {
+       outputFile=filename;
+   }
+   
+   
+   /**
+    * Reads the user input file and loads the parameters into the appropriate
+    * variables.
+    * 
+    * @param file the file with the user input
+    * @throws IllegalArgumentException if a setting is missing, malformed or unknown
+    * @throws UncheckedIOException if the file or the weights it names cannot be read
+    */
+   public void readData(String file) 
+   {
+      
+      try 
+      {
+         BufferedReader reader = new BufferedReader(new FileReader(file));
+         StringTokenizer tokenizer = new StringTokenizer(reader.readLine());
+        
+         mode = tokenizer.nextToken();
+         
+         tokenizer = new StringTokenizer(reader.readLine());         
+         preLoad = tokenizer.nextToken();
+         
+         tokenizer = new StringTokenizer(reader.readLine());         
+         numLayers = Integer.parseInt(tokenizer.nextToken());
+         tokenizer = new StringTokenizer(reader.readLine());
+         
+         if (numLayers < 2)
+         {
+            throw new IllegalArgumentException("a network needs at least 2 layers, not " + numLayers);
+         }
+         
+         numNodes = new int[numLayers]; 
+         
+         for (int n = 0; n < numLayers; n++)
+         {
+            numNodes[n] = Integer.parseInt(tokenizer.nextToken());
+         }
+         
+         numInputs = numNodes[0];
+         numOutputs = numNodes[numLayers - 1];
+         
+         tokenizer = new StringTokenizer(reader.readLine());
+         numTrainingSets = Integer.parseInt(tokenizer.nextToken());
+
+         allocateMemory(); 
+         
+         for (int b = 0; b < numTrainingSets; b++) 
+         {
+            tokenizer = new StringTokenizer(reader.readLine());
+            
+            for (int c = 0; c < numInputs + numOutputs; c++) 
+            {
+               trainingSets[b][c] = Double.parseDouble(tokenizer.nextToken());
+            } 
+         } // for (int b = 0; b < numTrainingSets; b++)
+
+         tokenizer = new StringTokenizer(reader.readLine());
+         maxNumberIterations = Integer.parseInt(tokenizer.nextToken());
+         tokenizer = new StringTokenizer(reader.readLine());
+         minError = Double.parseDouble(tokenizer.nextToken());
+         tokenizer = new StringTokenizer(reader.readLine());
+         lambda = Double.parseDouble(tokenizer.nextToken());
+         tokenizer = new StringTokenizer(reader.readLine());
+         minWeight = Double.parseDouble(tokenizer.nextToken());
+         maxWeight = Double.parseDouble(tokenizer.nextToken());
+         tokenizer = new StringTokenizer(reader.readLine());
+         writeFrequency = Integer.parseInt(tokenizer.nextToken());
+         tokenizer = new StringTokenizer(reader.readLine());
+         outputFile = new String(tokenizer.nextToken());
+         tokenizer = new StringTokenizer(reader.readLine());
+         readFile = new String(tokenizer.nextToken());
+         
+         evaluationInterval = 0;
+         batchSize = 1;
+         threads = 1;
+         verbosity = "full";
+         sampleEvery = 100;
+         reportFormat = "text";
+         reportFile = null;
+         backendName = "auto";
+         checkpointFormat = "text";
+         checkpointFile = null;
+         dataFile = null;
+         validationSplit = 0.0;
+         validationFile = null;
+         validationInterval = 1000;
+         patience = 0;
+         port = 8080;
+         maxBatch = 32;
+         maxWaitMicros = 200;
+         watchMillis = 1000;
+         fastSigmoid = false;
+         hiddenActivation = "sigmoid";
+         outputActivation = "sigmoid";
+         lossName = "mse";
+         optimizerName = "sgd";
+         momentum = 0.9;
+         rho = 0.9;
+         beta2 = 0.999;
+         epsilon = 1e-8;
+         schedule = "constant";
+         stepEvery = 1000;
+         stepFactor = 0.5;
+         warmup = 0;
+         precision = "double";
+         quantize = "none";
+         telemetryEnabled = false;
+         metricsFile = null;
+         metricsMillis = 1000;
+         
+         String setting = reader.readLine();
+         while (setting != null)
+         {
+            readSetting(setting);
+            setting = reader.readLine();
+         }
+         reader.close();
+         
+         backend = loadBackend(backendName);
+         activationFunctions = new Activation[numLayers];
+         
+         for (int n = 1; n < numLayers; n++)
+         {
+            activationFunctions[n] = activation(n == numLayers - 1 ? outputActivation : hiddenActivation, fastSigmoid);
+         }
+         
+         if (hiddenActivation.equals("softmax") && numLayers > 2)
+         {
+            throw new IllegalArgumentException("softmax is only allowed on the output layer");
+         }
+         
+         if (lossName.equals("crossEntropy"))
+         {
+            if (!outputActivation.equals("sigmoid") && !outputActivation.equals("softmax"))
+            {
+               throw new IllegalArgumentException("cross-entropy needs sigmoid or softmax outputs, not " + outputActivation);
+            }
+            
+            loss = new CrossEntropy(outputActivation.equals("softmax"));
+         }
+         else if (lossName.equals("mse"))
+         {
+            loss = new SquaredError();
+         }
+         else
+         {
+            throw new IllegalArgumentException("unknown loss: " + lossName);
+         }
+         
+         if (!quantize.equals("none") && !quantize.equals("row") && !quantize.equals("layer"))
+         {
+            throw new IllegalArgumentException("unknown quantization: " + quantize);
+         }
+         
+         if (!verbosity.equals("summary") && !verbosity.equals("sampled") && !verbosity.equals("full"))
+         {
+            throw new IllegalArgumentException("unknown verbosity: " + verbosity);
+         }
+         
+         if (!reportFormat.equals("text") && !reportFormat.equals("csv") && !reportFormat.equals("json"))
+         {
+            throw new IllegalArgumentException("unknown report format: " + reportFormat);
+         }
+         
+         if (dataFile == null)
+         {
+            trainingData = new MemoryData(trainingSets);
+         }
+         else
+         {
+            trainingData = isBinaryDataset(dataFile) ? new MappedData(dataFile, numInputs + numOutputs) 
+                                                     : new StreamedData(dataFile, numInputs + numOutputs);
+            numTrainingSets = trainingData.size();
+         }
+         
+         if (evaluationInterval == 0)
+         {
+            evaluationInterval = dataFile == null ? 1 : Math.max(1, numTrainingSets);
+         }
+         
+         sweepRows = new double[SWEEP_ROWS * (numInputs + numOutputs)];
+         sweepCursor = trainingData.cursor();
+         sweeps = new Sweep[threads];
+         
+         for (int s = 0; s < sweeps.length; s++)
+         {
+            sweeps[s] = new Sweep();
+         }
+         
+         if (threads > 1 && pool == null)
+         {
+            pool = new ForkJoinPool(threads);
+         }
+         
+         if (!checkpointFormat.equals("text") && !checkpointFormat.equals("binary"))
+         {
+            throw new IllegalArgumentException("unknown checkpoint format: " + checkpointFormat);
+         }
+         
+         if (checkpointFile == null)
+         {
+            checkpointFile = outputFile + (checkpointFormat.equals("binary") ? ".bin" : ".weights");
+         }
+         
+         if (mode.equals("T"))
+         {
+            if (!schedule.equals("constant") && !schedule.equals("step") && !schedule.equals("cosine"))
+            {
+               throw new IllegalArgumentException("unknown learning rate schedule: " + schedule);
+            }
+            
+            if (!precision.equals("double") && !precision.equals("float32"))
+            {
+               throw new IllegalArgumentException("unknown precision: " + precision);
+            }
+            
+            float32 = precision.equals("float32");
+            
+            if (float32)
+            {
+               weights32 = new float[numLayers - 1][];
+               
+               for (int n = 0; n < numLayers - 1; n++)
+               {
+                  weights32[n] = new float[weights[n].length];
+               }
+            }
+            
+            optimizer = optimizer(optimizerName);
+            optimizer.rounded = weights32;
+            batchRows = new double[batchSize * (numInputs + numOutputs)];
+            int blocks = (batchSize + SAMPLE_BLOCK - 1) / SAMPLE_BLOCK;
+            shardRows = SAMPLE_BLOCK * ((blocks + MAX_SHARDS - 1) / MAX_SHARDS);
+            workspaces = new Workspace[(batchSize + shardRows - 1) / shardRows];
+            
+            for (int s = 0; s < workspaces.length; s++)
+            {
+               workspaces[s] = new Workspace();
+            }
+            
+            if (pool != null && workspaces.length > 1)
+            {
+               shardTasks = new ShardTask[workspaces.length];
+               gradientTasks = new GradientTask[threads];
+               long size = 0;
+               
+               for (int n = 0; n < numLayers - 1; n++)
+               {
+                  size += weights[n].length;
+               }
+               
+               for (int s = 0; s < shardTasks.length; s++)
+               {
+                  shardTasks[s] = new ShardTask(workspaces[s]);
+               }
+               
+               for (int t = 0; t < threads; t++)
+               {
+                  gradientTasks[t] = new GradientTask(this, (int) (size * t / threads), (int) (size * (t + 1) / threads));
+               }
+            } // if (pool != null && workspaces.length > 1)
+         } // if (mode.equals("T"))
+                  
+         if (preLoad.equals("R") == false && isBinaryCheckpoint(readFile))
+         {
+            readBinaryWeights(readFile, weights);
+         }
+         else
+         {
+            readTextWeights();
+         }
+         
+         if (optimizer != null && preLoad.equals("R") == false && new File(readFile + ".optimizer").exists())
+         {
+            readOptimizerState(readFile + ".optimizer");
+         }
+      } // try
+      catch (IOException e) 
+      {
+         throw new UncheckedIOException(e.getMessage(), e);
+      }
+      
+   } // public void readData(String file) 
+
+
+   /**
+    * Loads the weights from the text format of saveWeights(), or randomizes them. A
+    * weight that is missing from the file is randomized.
+    * 
+    * @throws FileNotFoundException if the weights file cannot be opened
+    */
+   public void readTextWeights() throws FileNotFoundException
+   {
+      StringTokenizer tokenizer;
+      File myObj = null;
+      Scanner myReader = null;
+      if (preLoad.equals("R") == false)
+      {       
+          myObj = new File(readFile);
+          myReader = new Scanner(myObj);
+          try 
+          {
+              while (myReader.hasNextLine()) 
+              {
+                if ( myReader.nextLine().equals("***WEIGHTS***"))
+                {
+                    myReader.nextLine(); // To skip the iteration.
+                    break;
+                }
+              }
+            } // try
+          catch (Exception e) 
+          {
+              System.out.println("An error occurred.");
+              e.printStackTrace();
+          }
+      } // if (preLoad.equals("R") == false)
+      
+      for (int n = 0; n < numLayers - 1; n++) 
+      {
+         
+         for (int j = 0; j < numNodes[n]; j++) 
+         {
+            
+            for (int k = 0; k < numNodes[n+1]; k++) 
+            {
+               
+               String nextLine = null;
+               if (preLoad.equals("R") == false)
+               {
+                   if (myReader.hasNextLine())
+                       nextLine = myReader.nextLine();
+               }
+               
+               if (nextLine == null) 
+               {
+                   weights[n][j * numNodes[n + 1] + k] = (maxWeight - minWeight) * Math.random() + minWeight;
+               } 
+               
+               else if (preLoad.equals("R"))
+               {                      
+                   weights[n][j * numNodes[n + 1] + k] = (maxWeight - minWeight) * Math.random() + minWeight;
+               }
+               else
+               {
+                  tokenizer = new StringTokenizer(nextLine);
+                  
+                  if (!tokenizer.hasMoreTokens()) 
+                  {
+                      weights[n][j * numNodes[n + 1] + k] = (maxWeight - minWeight) * Math.random() + minWeight;
+                  } 
+                  
+                  else 
+                  {
+                     weights[n][j * numNodes[n + 1] + k] = Double.parseDouble(tokenizer.nextToken());
+                  } 
+               } // else
+               
+            } // for (int k = 0; k < numNodes[n + 1]; k++)
+            
+         } // for (int j = 0; j < numNodes[n]; j++)
+         
+      } // for (int n = 0; n < numLayers - 1; n++)
+
+      if ( myReader != null)
+          myReader.close();
+      
+   } // public void readTextWeights()
+   
+   
+   /**
+    * Reads one optional setting from the configuration file. A setting is a name
+    * followed by its value. Blank lines are ignored.
+    * 
+    * @param line the line of the configuration file holding the setting
+    */
+   public void readSetting(String line)
+   {
+      StringTokenizer tokenizer = new StringTokenizer(line);
+      
+      if (!tokenizer.hasMoreTokens())
+      {
+         return;
+      }
+      
+      String name = tokenizer.nextToken();
+      
+      if (name.equals("evaluationInterval"))
+      {
+         evaluationInterval = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("batchSize"))
+      {
+         batchSize = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("threads"))
+      {
+         threads = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("quiet"))
+      {
+         verbosity = onOff(name, tokenizer.nextToken()) ? "summary" : "full";
+      }
+      else if (name.equals("verbosity"))
+      {
+         verbosity = tokenizer.nextToken();
+      }
+      else if (name.equals("sampleEvery"))
+      {
+         sampleEvery = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("reportFormat"))
+      {
+         reportFormat = tokenizer.nextToken();
+      }
+      else if (name.equals("reportFile"))
+      {
+         reportFile = tokenizer.nextToken();
+      }
+      else if (name.equals("backend"))
+      {
+         backendName = tokenizer.nextToken();
+      }
+      else if (name.equals("checkpointFormat"))
+      {
+         checkpointFormat = tokenizer.nextToken();
+      }
+      else if (name.equals("checkpointFile"))
+      {
+         checkpointFile = tokenizer.nextToken();
+      }
+      else if (name.equals("dataFile"))
+      {
+         dataFile = tokenizer.nextToken();
+      }
+      else if (name.equals("validationSplit"))
+      {
+         validationSplit = Double.parseDouble(tokenizer.nextToken());
+      }
+      else if (name.equals("validationFile"))
+      {
+         validationFile = tokenizer.nextToken();
+      }
+      else if (name.equals("validationInterval"))
+      {
+         validationInterval = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("patience"))
+      {
+         patience = Math.max(0, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("port"))
+      {
+         port = Integer.parseInt(tokenizer.nextToken());
+      }
+      else if (name.equals("maxBatch"))
+      {
+         maxBatch = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("maxWaitMicros"))
+      {
+         maxWaitMicros = Math.max(0, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("activation"))
+      {
+         hiddenActivation = tokenizer.nextToken();
+      }
+      else if (name.equals("outputActivation"))
+      {
+         outputActivation = tokenizer.nextToken();
+      }
+      else if (name.equals("loss"))
+      {
+         lossName = tokenizer.nextToken();
+      }
+      else if (name.equals("optimizer"))
+      {
+         optimizerName = tokenizer.nextToken();
+      }
+      else if (name.equals("momentum"))
+      {
+         momentum = Double.parseDouble(tokenizer.nextToken());
+      }
+      else if (name.equals("rho"))
+      {
+         rho = Double.parseDouble(tokenizer.nextToken());
+      }
+      else if (name.equals("beta2"))
+      {
+         beta2 = Double.parseDouble(tokenizer.nextToken());
+      }
+      else if (name.equals("epsilon"))
+      {
+         epsilon = Double.parseDouble(tokenizer.nextToken());
+      }
+      else if (name.equals("schedule"))
+      {
+         schedule = tokenizer.nextToken();
+      }
+      else if (name.equals("stepEvery"))
+      {
+         stepEvery = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("stepFactor"))
+      {
+         stepFactor = Double.parseDouble(tokenizer.nextToken());
+      }
+      else if (name.equals("telemetry"))
+      {
+         telemetryEnabled = onOff(name, tokenizer.nextToken());
+      }
+      else if (name.equals("metricsFile"))
+      {
+         metricsFile = tokenizer.nextToken();
+         telemetryEnabled = true;
+      }
+      else if (name.equals("metricsMillis"))
+      {
+         metricsMillis = Math.max(1, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("quantize"))
+      {
+         quantize = tokenizer.nextToken();
+      }
+      else if (name.equals("precision"))
+      {
+         precision = tokenizer.nextToken();
+      }
+      else if (name.equals("warmup"))
+      {
+         warmup = Math.max(0, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else if (name.equals("sigmoid"))
+      {
+         String value = tokenizer.nextToken();
+         
+         if (!value.equals("table") && !value.equals("exact"))
+         {
+            throw new IllegalArgumentException("unknown sigmoid: " + value);
+         }
+         
+         fastSigmoid = value.equals("table");
+      }
+      else if (name.equals("watchMillis"))
+      {
+         watchMillis = Math.max(0, Integer.parseInt(tokenizer.nextToken()));
+      }
+      else
+      {
+         System.out.println("unknown setting: " + name);
+      }
+      
+   } // public void readSetting(String line)
+   
+   
+   /**
+    * Reads the value of a setting that is either on or off.
+    * 
+    * @param name  the name of the setting
+    * @param value its value in the configuration file
+    * @return true for on, false for off
+    * @throws IllegalArgumentException if the value is neither
+    */
+   private static boolean onOff(String name, String value)
+   {
+      if (!value.equals("on") && !value.equals("off"))
+      {
+         throw new IllegalArgumentException("unknown " + name + " value: " + value);
+      }
+      
+      return value.equals("on");
+      
+   } // private static boolean onOff(String name, String value)
+
+   
+   /**
+    * Runs the network on the training cases, printing all of them, a sample of them
+    * or none of them, by the verbosity, to the report.
+    */
+   public void runTrainingSet() 
+   {
+      
+      System.out.println("RUNNING " + numTrainingSets + " TRAINING SETS");
+      System.out.println();
+
+      Report report = null;
+      
+      try
+      {
+         report = new Report(reportFile, false);
+      }
+      catch (FileNotFoundException e)
+      {
+         System.out.println("cannot write the report to " + reportFile + ": " + e.getMessage());
+      }
+      
+      double[] errors = sweep(report == null || verbosity.equals("summary") ? null : report);
+      
+      if (report != null)
+      {
+         report.summary(errors[0], errors[1]);
+         report.close();
+      }
+
+      System.out.println("REPORT: ");
+      System.out.println();
+      System.out.println("total error: " + errors[0]);
+      System.out.println("max error from training sets: " + errors[1]);
+      
+   } // public void runTrainingSet()
+   
+   
+   /**
+    * Runs the training cases through the weights quantized to int8 and reports how
+    * they compare with the double weights: the total and largest error, measured as
+    * runTrainingSet() measures them, the largest difference of any output, the memory
+    * of the weights and the training sets scored per second by each, the best of
+    * five timed rounds. The comparison goes to the report, after the training sets.
+    */
+   public void runQuantized()
+   {
+      Predictor exact = new Predictor(numNodes, weights, activationFunctions);
+      Predictor quantized = exact.quantize(quantize.equals("layer"));
+      int width = numInputs + numOutputs;
+      double[] in = new double[SWEEP_ROWS * numInputs];
+      double[] out = new double[SWEEP_ROWS * numOutputs];
+      double[] reference = new double[SWEEP_ROWS * numOutputs];
+      double totalError = 0.0;
+      double exactError = 0.0;
+      double maxError = 0.0;
+      double maxDifference = 0.0;
+      
+      for (int a = 0; a < numTrainingSets; a += SWEEP_ROWS)
+      {
+         int count = Math.min(SWEEP_ROWS, numTrainingSets - a);
+         sweepCursor.next(sweepRows, count);
+         
+         for (int r = 0; r < count; r++)
+         {
+            System.arraycopy(sweepRows, r * width, in, r * numInputs, numInputs);
+         }
+         
+         quantized.predictBatch(in, out, count);
+         exact.predictBatch(in, reference, count);
+         
+         for (int r = 0; r < count; r++)
+         {
+            double currError = 0.0;
+            
+            for (int e = 0; e < numOutputs; e++)
+            {
+               double expected = sweepRows[r * width + numInputs + e];
+               currError += calculateError(expected, out[r * numOutputs + e]);
+               exactError += calculateError(expected, reference[r * numOutputs + e]);
+               maxDifference = Math.max(maxDifference, Math.abs(out[r * numOutputs + e] - reference[r * numOutputs + e]));
+            }
+            
+            totalError += currError;
+            maxError = Math.max(maxError, currError);
+         } // for (int r = 0; r < count; r++)
+      } // for (int a = 0; a < numTrainingSets; a += SWEEP_ROWS)
+      
+      int count = Math.min(SWEEP_ROWS, numTrainingSets);
+      long work = 0;
+      
+      for (int n = 0; n < numLayers - 1; n++)
+      {
+         work += weights[n].length;
+      }
+      
+      double[] rates = new double[2];
+      
+      if (count > 0)
+      {
+         int passes = (int) Math.max(16, (1L << 26) / (count * work));
+         
+         for (int round = 0; round < 5; round++)
+         {
+            for (int p = 0; p < 2; p++)
+            {
+               Predictor predictor = p == 0 ? quantized : exact;
+               long start = System.nanoTime();
+               
+               for (int i = 0; i < passes; i++)
+               {
+                  predictor.predictBatch(in, out, count);
+               }
+               
+               rates[p] = Math.max(rates[p], passes * count * 1e9 / (System.nanoTime() - start));
+            } // for (int p = 0; p < 2; p++)
+         } // for (int round = 0; round < 5; round++)
+      } // if (count > 0)
+      
+      try
+      {
+         Report report = new Report(reportFile, true);
+         report.quantized(quantize, totalError, exactError, maxError, maxDifference, 
+                          quantized.weightBytes(), exact.weightBytes(), rates[0], rates[1]);
+         report.close();
+      }
+      catch (FileNotFoundException e)
+      {
+         System.out.println("cannot write the report to " + reportFile + ": " + e.getMessage());
+      }
+      
+   } // public void runQuantized()
+
+   
+   /**
+    * Calculates the values of the nodes of every layer after the input layer.
+    */
+   public void calculateNode() 
+   {
+      
+      for (int n = 1; n < numLayers; n++) 
+      {
+         System.arraycopy(nodeCalculations[n], 0, originalNodeCalculations[n], 0, numNodes[n]);
+         multiply(weights[n - 1], numNodes[n - 1], numNodes[n], nodeCalculations[n - 1], nodeCalculations[n], 1);
+         
+         activationFunctions[n].apply(nodeCalculations[n], 1, numNodes[n]);
+      } // for (int n = 1; n < numLayers; n++)
+      
+   } // public void calculateNode()
+   
+   
+   /**
+    * Approximates the sigmoid by linear interpolation in a table of its values
+    * between -SIGMOID_RANGE and SIGMOID_RANGE, holding its end values beyond them.
+    * Interpolation is off by at most step^2 / 8 times the largest second derivative
+    * of the sigmoid, about 0.0962, or 2.9e-6 with steps of 1/64, and the sigmoid is
+    * within 1.2e-7 of its end values past 16.
+    * 
+    * @param x the value to run through the sigmoid
+    * @return the approximate sigmoid of x
+    */
+   public static double tableSigmoid(double x)
+   {
+      double t = (x + SIGMOID_RANGE) * SIGMOID_STEPS;
+      int last = SIGMOID_TABLE.length - 1;
+      
+      if (t <= 0.0)
+      {
+         return SIGMOID_TABLE[0];
+      }
+      
+      if (t >= last)
+      {
+         return SIGMOID_TABLE[last];
+      }
+      
+      int i = (int) t;
+      return SIGMOID_TABLE[i] + (t - i) * (SIGMOID_TABLE[i + 1] - SIGMOID_TABLE[i]);
+   } // public static double tableSigmoid(double x)
+   
+   
+   /**
+    * @return the sigmoid at every step from -SIGMOID_RANGE to SIGMOID_RANGE
+    */
+   private static double[] sigmoidTable()
+   {
+      double[] table = new double[2 * SIGMOID_RANGE * SIGMOID_STEPS + 1];
+      
+      for (int i = 0; i < table.length; i++)
+      {
+         table[i] = 1.0 / (1.0 + Math.exp(SIGMOID_RANGE - (double) i / SIGMOID_STEPS));
+      }
+      
+      return table;
+   } // private static double[] sigmoidTable()
+   
+   
+   
+   
+   /**
+    * Calculates the error of a calculated output based on the expected value, by the
+    * configured loss.
+    * 
+    * @param expected   the expected output
+    * @param calculated the output calculated by the network
+    * @return the error of a calculated output
+    */
+   public double calculateError(double expected, double calculated) 
+   {
+      return loss.error(expected, calculated);
+   }
+   
+   
+   /**
+    * Sums the error of all the test cases.
+    * 
+    * @return the total error of all the test cases
+    */
+   public double getTotalError()
+   {
+      return sweep(null)[0];
+   }
+   
+   
+   /**
+    * Runs every training set through the weights and sums their errors. The training
+    * sets are read through the sweep cursor, which stays at the first training set
+    * because every sweep reads all of them, SWEEP_ROWS at a time into the sweeps.
+    * With more than one thread the sweeps run a round of those chunks in parallel,
+    * each with its own scratch. Every chunk sums its own errors in order and the
+    * chunk sums are added in order, so the total is the same for any number of
+    * threads, and the same as a plain running sum while there is only one chunk.
+    * 
+    * @param report the report to print the training sets to, or null
+    * @return the total error and the largest error of any training set
+    */
+   public double[] sweep(Report report)
+   {
+      double totalError = 0.0;
+      double maxError = 0.0;
+      for (int a = 0; a < numTrainingSets; a += sweeps.length * SWEEP_ROWS)
+      {
+         int chunks = Math.min(sweeps.length, (numTrainingSets - a + SWEEP_ROWS - 1) / SWEEP_ROWS);
+         
+         for (int s = 0; s < chunks; s++)
+         {
+            sweeps[s].count = Math.min(SWEEP_ROWS, numTrainingSets - a - s * SWEEP_ROWS);
+            sweepCursor.next(sweeps[s].rows, sweeps[s].count);
+         }
+         
+         if (chunks == 1)
+         {
+            for (int s = 0; s < chunks; s++)
+            {
+               sweeps[s].run();
+            }
+         }
+         else
+         {
+            SweepTask[] tasks = new SweepTask[chunks];
+            
+            for (int s = 0; s < chunks; s++)
+            {
+               tasks[s] = new SweepTask(sweeps[s]);
+               pool.execute(tasks[s]);
+            }
+            
+            for (int s = 0; s < chunks; s++)
+            {
+               tasks[s].join();
+            }
+         } // else
+         
+         for (int s = 0; s < chunks; s++)
+         {
+            totalError += sweeps[s].error;
+            maxError = Math.max(maxError, sweeps[s].maxError);
+            
+            if (report != null)
+            {
+               sweeps[s].report(a + s * SWEEP_ROWS, report);
+            }
+         } // for (int s = 0; s < chunks; s++)
+         
+      } // for (int a = 0; a < numTrainingSets; a += sweeps.length * SWEEP_ROWS)
+      
+      return new double[] {totalError, maxError};
+      
+   } // public double[] sweep(Report report)
+   
+   
+   /**
+    * Implements the backpropagation algorithm to adjust the weights, one training set
+    * at a time. Plain gradient descent changes the weights during the backward pass;
+    * other optimizers take the gradients of the training set in one step afterwards.
+    * 
+    * @param ws the workspace holding the forward pass of one training set
+    */
+   public void backpropagation(Workspace ws)
+   {
+       double rate = learningRate(optimizer.steps);
+       
+       if (ws.gradients == null)
+       {
+           backwardPass(weights, rate, 1, ws);
+           optimizer.steps++;
+       }
+       else
+       {
+           backwardPass(ws.gradients, 1.0, 1, ws);
+           optimizer.step(weights, ws.gradients, rate);
+       }
+   } // public void backpropagation(Workspace ws)
+   
+   
+   /**
+    * Finds the learning rate of a step. The rate starts at lambda and is either kept,
+    * multiplied by stepFactor every stepEvery steps, or brought down to 0 along half
+    * a cosine over the steps of the run. During the first warmup steps it is also
+    * ramped up linearly from lambda / warmup.
+    * 
+    * @param step the number of steps taken before this one
+    * @return the learning rate
+    */
+   public double learningRate(long step)
+   {
+       double rate = lambda;
+       
+       if (schedule.equals("step"))
+       {
+           rate *= Math.pow(stepFactor, step / stepEvery);
+       }
+       else if (schedule.equals("cosine"))
+       {
+           double steps = Math.ceil((double) maxNumberIterations / batchSize);
+           rate *= 0.5 * (1.0 + Math.cos(Math.PI * Math.min(1.0, step / steps)));
+       }
+       
+       if (step < warmup)
+       {
+           rate *= (step + 1.0) / warmup;
+       }
+       
+       return rate;
+   } // public double learningRate(long step)
+   
+   
+   /**
+    * Implements the backpropagation algorithm without changing the weights. The
+    * weight changes for the training sets are added to the gradients of the workspace
+    * instead, so that a whole batch can be applied at once by applyGradients().
+    * 
+    * @param count the number of training sets in the forward pass of the workspace
+    * @param ws    the workspace holding the forward pass of the training sets
+    */
+   public void accumulateGradients(int count, Workspace ws)
+   {
+       backwardPass(ws.gradients, 1.0, count, ws);
+   } 
+   
+   
+   /**
+    * Runs the deltas of the output layer back through every layer, from the last
+    * layer to the first. The deltas of each layer are summed back through its weights
+    * before those weights are changed. The derivative of each activation function is
+    * taken from the activations the forward pass left in the workspace, such as
+    * a * (1 - a) for the sigmoid, rather than by running the function again.
+    * 
+    * @param target the arrays the weight changes are added to, either the weights or
+    *               the gradients of the workspace
+    * @param scale  the factor applied to the weight changes
+    * @param count  the number of training sets in the forward pass of the workspace
+    * @param ws     the workspace holding the forward pass of the training sets
+    */
+   public void backwardPass(double[][] target, double scale, int count, Workspace ws)
+   {
+       if (ws.activations32 != null)
+       {
+           backwardPass32(target, scale, count, ws);
+           return;
+       }
+       
+       for (int n = numLayers - 1; n > 0; n--)
+       {
+           double[] omega = n > 1 ? ws.deltas[n - 1] : null;
+           
+           backward(weights[n - 1], numNodes[n - 1], numNodes[n], ws.activations[n - 1], ws.deltas[n], 
+                    omega, target[n - 1], scale, count);
+           
+           if (omega != null)
+           {
+               activationFunctions[n - 1].derivative(ws.activations[n - 1], omega, 0, count * numNodes[n - 1]);
+           }
+       } // for (int n = numLayers - 1; n > 0; n--)
+       
+   } // public void backwardPass(double[][] target, double scale, int count, Workspace ws)
+   
+   
+   /**
+    * Runs the backward pass of a float32 workspace through the float copy of the
+    * weights. The weight changes of the block are summed in the float gradients of
+    * the workspace, then added to the double target once for the whole block, so
+    * that gradients still build up over a batch in double.
+    * 
+    * @param target the gradients the weight changes are added to
+    * @param scale  the factor applied to the weight changes
+    * @param count  the number of training sets in the forward pass of the workspace
+    * @param ws     the workspace holding the forward pass of the training sets
+    */
+   public void backwardPass32(double[][] target, double scale, int count, Workspace ws)
+   {
+       for (int n = numLayers - 1; n > 0; n--)
+       {
+           float[] omega = n > 1 ? ws.deltas32[n - 1] : null;
+           
+           backward(weights32[n - 1], numNodes[n - 1], numNodes[n], ws.activations32[n - 1], ws.deltas32[n], 
+                    omega, ws.gradients32[n - 1], 1.0f, count);
+           
+           if (omega != null)
+           {
+               activationFunctions[n - 1].derivative(ws.activations32[n - 1], omega, 0, count * numNodes[n - 1]);
+           }
+       } // for (int n = numLayers - 1; n > 0; n--)
+       
+       for (int n = 0; n < numLayers - 1; n++)
+       {
+           double[] t = target[n];
+           float[] g = ws.gradients32[n];
+           
+           for (int i = 0; i < g.length; i++)
+           {
+               t[i] += scale * g[i];
+               g[i] = 0.0f;
+           }
+       } // for (int n = 0; n < numLayers - 1; n++)
+       
+   } // public void backwardPass32(double[][] target, double scale, int count, Workspace ws)
+   
+   
+   /**
+    * Applies the gradients accumulated by the workspaces to the weights as one step
+    * of the optimizer, and clears them for the next batch. The learning rate is
+    * applied per training set, so a batch moves the weights as far as its training
+    * sets would have one at a time. With a thread pool, the weights are split into
+    * one range per thread, and each range is summed and stepped on its own thread.
+    */
+   public void applyGradients()
+   {
+       double rate = learningRate(optimizer.steps);
+       optimizer.steps++;
+       
+       if (gradientTasks == null)
+       {
+           applyGradients(0, Integer.MAX_VALUE, rate);
+       }
+       else
+       {
+           for (GradientTask task : gradientTasks)
+           {
+               task.reinitialize();
+               task.rate = rate;
+               pool.execute(task);
+           }
+           
+           for (GradientTask task : gradientTasks)
+           {
+               task.join();
+           }
+       } // else
+       
+   } // public void applyGradients()
+   
+   
+   /**
+    * Applies the gradients of one range of the weights, counting the weights of all
+    * the layers one after another. The gradients of the other workspaces are added to
+    * those of the first in workspace order, one weight at a time, so every weight
+    * gets the same sum however the weights are split into ranges.
+    * 
+    * @param from the index of the first weight of the range
+    * @param to   the index after the last weight of the range
+    * @param rate the learning rate of this step
+    */
+   public void applyGradients(int from, int to, double rate)
+   {
+       int offset = 0;
+       
+       for (int n = 0; n < numLayers - 1; n++)
+       {
+           double[] gradients = workspaces[0].gradients[n];
+           int lo = Math.max(0, from - offset);
+           int hi = Math.min(gradients.length, to - offset);
+           offset += gradients.length;
+           
+           if (lo >= hi)
+           {
+               continue;
+           }
+           
+           for (int s = 1; s < workspaces.length; s++)
+           {
+               axpy(1.0, workspaces[s].gradients[n], lo, gradients, lo, hi - lo);
+               Arrays.fill(workspaces[s].gradients[n], lo, hi, 0.0);
+           }
+           
+           optimizer.update(n, weights[n], gradients, rate, lo, hi);
+       } // for (int n = 0; n < numLayers - 1; n++)
+       
+   } // public void applyGradients(int from, int to, double rate)
+   
+   
+   /**
+    * Rounds the double weights into the float copy used by the float32 passes.
+    */
+   public void roundWeights()
+   {
+       for (int n = 0; n < numLayers - 1; n++)
+       {
+           double[] w = weights[n];
+           float[] w32 = weights32[n];
+           
+           for (int i = 0; i < w.length; i++)
+           {
+               w32[i] = (float) w[i];
+           }
+       } // for (int n = 0; n < numLayers - 1; n++)
+       
+   } // public void roundWeights()
+   
+   
+   /**
+    * Implements the forward pass of the backpropagation algorithm for count
+    * consecutive training sets, storing each layer of the training sets as one row of
+    * the workspace arrays. The summed error of the training sets before the weights
+    * are adjusted is left in the sampleError of the workspace.
+    * 
+    * @param rows  the training sets, one after another, inputs followed by outputs
+    * @param first the index of the first training set in rows
+    * @param count the number of training sets, at most the block size of the workspace
+    * @param ws    the workspace to hold the forward pass
+    */
+   public void forwardPass(double[] rows, int first, int count, Workspace ws)
+   {
+       if (ws.activations32 != null)
+       {
+           forwardPass32(rows, first, count, ws);
+           return;
+       }
+       
+       int last = numLayers - 1;
+       int width = numInputs + numOutputs;
+       ws.sampleError = 0.0;
+       
+       for (int b = 0; b < count; b++)
+       {
+          System.arraycopy(rows, (first + b) * width, ws.activations[0], b * numInputs, numInputs);
+       }
+       
+       for (int n = 1; n < numLayers; n++)
+       {
+          multiply(weights[n - 1], numNodes[n - 1], numNodes[n], ws.activations[n - 1], ws.activations[n], count);
+          activationFunctions[n].apply(ws.activations[n], count, numNodes[n]);
+       } // for (int n = 1; n < numLayers; n++)
+       
+       for (int b = 0; b < count; b++)
+       {
+          ws.sampleError = loss.outputDeltas(activationFunctions[last], ws.activations[last], rows, 
+                                             (first + b) * width + numInputs, ws.deltas[last], 
+                                             b * numOutputs, numOutputs, ws.sampleError);
+       }
+       
+   } // public void forwardPass(double[] rows, int first, int count, Workspace ws)
+   
+   
+   /**
+    * Runs the forward pass of a float32 workspace through the float copy of the
+    * weights. The inputs are rounded to float as they are copied in, and the errors
+    * of the outputs are summed in double.
+    * 
+    * @param rows  the training sets, one after another, inputs followed by outputs
+    * @param first the index of the first training set in rows
+    * @param count the number of training sets, at most the block size of the workspace
+    * @param ws    the workspace to hold the forward pass
+    */
+   public void forwardPass32(double[] rows, int first, int count, Workspace ws)
+   {
+       int last = numLayers - 1;
+       int width = numInputs + numOutputs;
+       ws.sampleError = 0.0;
+       
+       for (int b = 0; b < count; b++)
+       {
+          for (int i = 0; i < numInputs; i++)
+          {
+             ws.activations32[0][b * numInputs + i] = (float) rows[(first + b) * width + i];
+          }
+       }
+       
+       for (int n = 1; n < numLayers; n++)
+       {
+          multiply(weights32[n - 1], numNodes[n - 1], numNodes[n], ws.activations32[n - 1], ws.activations32[n], count);
+          activationFunctions[n].apply(ws.activations32[n], count, numNodes[n]);
+       } // for (int n = 1; n < numLayers; n++)
+       
+       for (int b = 0; b < count; b++)
+       {
+          ws.sampleError = loss.outputDeltas(activationFunctions[last], ws.activations32[last], rows, 
+                                             (first + b) * width + numInputs, ws.deltas32[last], 
+                                             b * numOutputs, numOutputs, ws.sampleError);
+       }
+       
+   } // public void forwardPass32(double[] rows, int first, int count, Workspace ws)
+   
+   
+   /**
+    * Multiplies count rows of values by the weights between two layers. The weights
+    * are walked one row at a time and added into the outputs, so every inner loop
+    * reads contiguous memory and can be vectorized, while each output still sums its
+    * terms in row order. The outputs are built in blocks of columns that stay in
+    * cache while the weights stream past.
+    * 
+    * @param w      the weights, rows rows of cols weights each
+    * @param rows   the number of nodes in the layer the weights branch off from
+    * @param cols   the number of nodes in the layer the weights connect to
+    * @param in     the values of the first layer, count rows of rows values
+    * @param out    the sums for the second layer, count rows of cols values
+    * @param count  the number of rows of values
+    */
+   public static void multiply(double[] w, int rows, int cols, double[] in, double[] out, int count)
+   {
+      for (int c0 = 0; c0 < cols; c0 += COLUMN_BLOCK)
+      {
+         int width = Math.min(COLUMN_BLOCK, cols - c0);
+         
+         for (int b = 0; b < count; b++)
+         {
+            Arrays.fill(out, b * cols + c0, b * cols + c0 + width, 0.0);
+         }
+         
+         for (int j = 0; j < rows; j++)
+         {
+            for (int b = 0; b < count; b++)
+            {
+               axpy(in[b * rows + j], w, j * cols + c0, out, b * cols + c0, width);
+            }
+         } // for (int j = 0; j < rows; j++)
+         
+      } // for (int c0 = 0; c0 < cols; c0 += COLUMN_BLOCK)
+      
+   } // public static void multiply(double[] w, int rows, int cols, double[] in, double[] out, int count)
+   
+   
+   /**
+    * Multiplies count rows of single-precision values by a float copy of the weights
+    * between two layers, the same way as the double version.
+    * 
+    * @param w      the weights, rows rows of cols weights each
+    * @param rows   the number of nodes in the layer the weights branch off from
+    * @param cols   the number of nodes in the layer the weights connect to
+    * @param in     the values of the first layer, count rows of rows values
+    * @param out    the sums for the second layer, count rows of cols values
+    * @param count  the number of rows of values
+    */
+   public static void multiply(float[] w, int rows, int cols, float[] in, float[] out, int count)
+   {
+      for (int c0 = 0; c0 < cols; c0 += COLUMN_BLOCK)
+      {
+         int width = Math.min(COLUMN_BLOCK, cols - c0);
+         
+         for (int b = 0; b < count; b++)
+         {
+            Arrays.fill(out, b * cols + c0, b * cols + c0 + width, 0.0f);
+         }
+         
+         for (int j = 0; j < rows; j++)
+         {
+            for (int b = 0; b < count; b++)
+            {
+               axpy(in[b * rows + j], w, j * cols + c0, out, b * cols + c0, width);
+            }
+         } // for (int j = 0; j < rows; j++)
+         
+      } // for (int c0 = 0; c0 < cols; c0 += COLUMN_BLOCK)
+      
+   } // public static void multiply(float[] w, int rows, int cols, float[] in, float[] out, int count)
+   
+   
+   /**
+    * Runs the deltas of count rows back through the weights between two layers. For
+    * every row of weights, the deltas are first summed through the row into omega,
+    * then the row is moved by scale times the value of its node times the deltas.
+    * Rows are taken four at a time so that their four sums run side by side, each
+    * still adding its terms in order. Each row of weights is reused by every row of
+    * deltas while it is in cache.
+    * 
+    * @param w      the weights, rows rows of cols weights each
+    * @param rows   the number of nodes in the layer the weights branch off from
+    * @param cols   the number of nodes in the layer the weights connect to
+    * @param in     the values of the first layer, count rows of rows values
+    * @param psi    the deltas of the second layer, count rows of cols values
+    * @param omega  receives the summed deltas of the first layer, or null if not needed
+    * @param target the array the changes are added to, either w or a gradient
+    * @param scale  the factor applied to the changes
+    * @param count  the number of rows of values
+    */
+   public static void backward(double[] w, int rows, int cols, double[] in, double[] psi, 
+                               double[] omega, double[] target, double scale, int count)
+   {
+      int j = 0;
+      
+      if (omega != null)
+      {
+         for (; j + 4 <= rows; j += 4)
+         {
+            for (int b = 0; b < count; b++)
+            {
+               dot4(w, j * cols, psi, b * cols, cols, omega, b * rows + j);
+            }
+            
+            for (int r = j; r < j + 4; r++)
+            {
+               for (int b = 0; b < count; b++)
+               {
+                  axpy(scale * in[b * rows + r], psi, b * cols, target, r * cols, cols);
+               }
+            }
+         } // for (; j + 4 <= rows; j += 4)
+      } // if (omega != null)
+      
+      for (; j < rows; j++)
+      {
+         int row = j * cols;
+         
+         if (omega != null)
+         {
+            for (int b = 0; b < count; b++)
+            {
+               omega[b * rows + j] = dot(w, row, psi, b * cols, cols);
+            }
+         }
+         
+         for (int b = 0; b < count; b++)
+         {
+            axpy(scale * in[b * rows + j], psi, b * cols, target, row, cols);
+         }
+      } // for (; j < rows; j++)
+      
+   } // public static void backward(...)
+   
+   
+   /**
+    * Runs the deltas of count single-precision rows back through a float copy of the
+    * weights between two layers, the same way as the double version.
+    * 
+    * @param w      the weights, rows rows of cols weights each
+    * @param rows   the number of nodes in the layer the weights branch off from
+    * @param cols   the number of nodes in the layer the weights connect to
+    * @param in     the values of the first layer, count rows of rows values
+    * @param psi    the deltas of the second layer, count rows of cols values
+    * @param omega  receives the summed deltas of the first layer, or null if not needed
+    * @param target the gradient the changes are added to
+    * @param scale  the factor applied to the changes
+    * @param count  the number of rows of values
+    */
+   public static void backward(float[] w, int rows, int cols, float[] in, float[] psi, 
+                               float[] omega, float[] target, float scale, int count)
+   {
+      int j = 0;
+      
+      if (omega != null)
+      {
+         for (; j + 4 <= rows; j += 4)
+         {
+            for (int b = 0; b < count; b++)
+            {
+               dot4(w, j * cols, psi, b * cols, cols, omega, b * rows + j);
+            }
+            
+            for (int r = j; r < j + 4; r++)
+            {
+               for (int b = 0; b < count; b++)
+               {
+                  axpy(scale * in[b * rows + r], psi, b * cols, target, r * cols, cols);
+               }
+            }
+         } // for (; j + 4 <= rows; j += 4)
+      } // if (omega != null)
+      
+      for (; j < rows; j++)
+      {
+         int row = j * cols;
+         
+         if (omega != null)
+         {
+            for (int b = 0; b < count; b++)
+            {
+               omega[b * rows + j] = dot(w, row, psi, b * cols, cols);
+            }
+         }
+         
+         for (int b = 0; b < count; b++)
+         {
+            axpy(scale * in[b * rows + j], psi, b * cols, target, row, cols);
+         }
+      } // for (; j < rows; j++)
+      
+   } // public static void backward(float[] ...)
+   
+   
+   /**
+    * Adds a multiple of one run of values to another.
+    * 
+    * @param a    the multiple
+    * @param x    the values to add
+    * @param xOff the index of the first value to add
+    * @param y    the values added to
+    * @param yOff the index of the first value added to
+    * @param n    the number of values
+    */
+   public static void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n)
+   {
+      backend.axpy(a, x, xOff, y, yOff, n);
+   }
+   
+   
+   /**
+    * Adds a multiple of one run of single-precision values to another.
+    * 
+    * @param a    the multiple
+    * @param x    the values to add
+    * @param xOff the index of the first value to add
+    * @param y    the values added to
+    * @param yOff the index of the first value added to
+    * @param n    the number of values
+    */
+   public static void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n)
+   {
+      backend.axpy(a, x, xOff, y, yOff, n);
+   }
+
+   
+   
+   /**
+    * Sums the products of four consecutive rows of values with one run of values.
+    * 
+    * @param x    the rows, each n values long
+    * @param xOff the index of the first value of the first row
+    * @param y    the run of values
+    * @param yOff the index of the first of the run of values
+    * @param n    the number of values in each row
+    * @param out  receives the four sums
+    * @param oOff the index the first sum is stored at
+    */
+   public static void dot4(double[] x, int xOff, double[] y, int yOff, int n, double[] out, int oOff)
+   {
+      backend.dot4(x, xOff, y, yOff, n, out, oOff);
+   }
+   
+   
+   /**
+    * Sums the products of four consecutive rows of single-precision values with one
+    * run of values.
+    * 
+    * @param x    the rows, each n values long
+    * @param xOff the index of the first value of the first row
+    * @param y    the run of values
+    * @param yOff the index of the first of the run of values
+    * @param n    the number of values in each row
+    * @param out  receives the four sums
+    * @param oOff the index the first sum is stored at
+    */
+   public static void dot4(float[] x, int xOff, float[] y, int yOff, int n, float[] out, int oOff)
+   {
+      backend.dot4(x, xOff, y, yOff, n, out, oOff);
+   }
+   
+   
+   /**
+    * Sums the products of two runs of values.
+    * 
+    * @param x    the first values
+    * @param xOff the index of the first of the first values
+    * @param y    the second values
+    * @param yOff the index of the first of the second values
+    * @param n    the number of values
+    * @return the sum of the products
+    */
+   public static double dot(double[] x, int xOff, double[] y, int yOff, int n)
+   {
+      return backend.dot(x, xOff, y, yOff, n);
+   }
+   
+   
+   /**
+    * Sums the products of two runs of single-precision values.
+    * 
+    * @param x    the first values
+    * @param xOff the index of the first of the first values
+    * @param y    the second values
+    * @param yOff the index of the first of the second values
+    * @param n    the number of values
+    * @return the sum of the products
+    */
+   public static float dot(float[] x, int xOff, float[] y, int yOff, int n)
+   {
+      return backend.dot(x, xOff, y, yOff, n);
+   }
+   
+   
+   /**
+    * Sums the products of two runs of int8 codes, exactly.
+    * 
+    * @param x    the first codes
+    * @param xOff the index of the first of the first codes
+    * @param y    the second codes
+    * @param yOff the index of the first of the second codes
+    * @param n    the number of codes
+    * @return the sum of the products
+    */
+   public static int dot(byte[] x, int xOff, byte[] y, int yOff, int n)
+   {
+      return backend.dot(x, xOff, y, yOff, n);
+   }
+   
+   
+   /**
+    * Loads the compute backend with the given name. The vector backend lives in
+    * VectorBackend.java and is only present when that file was compiled alongside this
+    * one with the jdk.incubator.vector module. If it cannot be loaded the scalar
+    * backend is used instead, with a warning unless the name was auto.
+    * 
+    * @param name scalar, vector or auto
+    * @return the backend
+    */
+   public static Backend loadBackend(String name)
+   {
+      if (!name.equals("scalar"))
+      {
+         try
+         {
+            return new VectorKernels();
+         }
+         catch (LinkageError e)
+         {
+            if (name.equals("vector"))
+            {
+               System.out.println("vector backend unavailable (" + e + "), using scalar backend");
+            }
+         }
+      } // if (!name.equals("scalar"))
+      
+      return new ScalarBackend();
+      
+   } // public static Backend loadBackend(String name)
+   
+   
+   /**
+    * Trains one batch of training sets and applies it to the weights. The batch is
+    * split into shards of shardRows training sets, one per workspace, each
+    * accumulating into its own gradients. With a thread pool the shards run in
+    * parallel. The shard size depends only on batchSize, and the shards are summed
+    * in shard order, so the result is the same for any number of threads.
+    * 
+    * @param count the number of training sets in the batch, already read into batchRows
+    * @return the summed error of the training sets before the batch was applied
+    */
+   public double trainBatch(int count)
+   {
+      int numShards = workspaces.length;
+      double batchError = 0.0;
+      
+      if (shardTasks == null)
+      {
+         for (int s = 0; s < numShards; s++)
+         {
+            workspaces[s].trainShard(Math.min(count, s * shardRows), Math.min(count, (s + 1) * shardRows));
+         }
+      }
+      else
+      {
+         for (int s = 0; s < numShards; s++)
+         {
+            shardTasks[s].reinitialize();
+            shardTasks[s].from = Math.min(count, s * shardRows);
+            shardTasks[s].to = Math.min(count, (s + 1) * shardRows);
+            pool.execute(shardTasks[s]);
+         }
+         
+         for (int s = 0; s < numShards; s++)
+         {
+            shardTasks[s].join();
+         }
+      } // else
+      
+      if (telemetry == null)
+      {
+         applyGradients();
+      }
+      else
+      {
+         telemetry.beforeStep();
+         long t0 = System.nanoTime();
+         applyGradients();
+         telemetry.updateNanos += System.nanoTime() - t0;
+         telemetry.afterStep();
+         
+         for (int s = 0; s < numShards; s++)
+         {
+            telemetry.forwardNanos += workspaces[s].forwardNanos;
+            telemetry.backwardNanos += workspaces[s].backwardNanos;
+         }
+      } // else
+      
+      for (int s = 0; s < numShards; s++)
+      {
+         batchError += workspaces[s].shardError;
+      }
+      
+      return batchError;
+      
+   } // public double trainBatch(int count)
+   
+   
+   /**
+    * Sets the validation sets aside before training: either the validation file, or
+    * the last validationSplit of the training sets, which are then no longer trained
+    * on or counted in the total error. This is left to training so that converting
+    * or running the same input file still sees every training set.
+    * 
+    * @throws IOException if the validation file cannot be read
+    */
+   public void holdOutValidation() throws IOException
+   {
+      int width = numInputs + numOutputs;
+      
+      if (validationFile != null)
+      {
+         validationData = isBinaryDataset(validationFile) ? new MappedData(validationFile, width) 
+                                                          : new StreamedData(validationFile, width);
+      }
+      else if (validationSplit > 0.0 && numTrainingSets > 1)
+      {
+         int held = (int) Math.max(1, Math.min(numTrainingSets - 1, Math.round(numTrainingSets * validationSplit)));
+         validationData = new RangeData(trainingData, width, numTrainingSets - held, held);
+         trainingData = new RangeData(trainingData, width, 0, numTrainingSets - held);
+         numTrainingSets -= held;
+         sweepCursor.close();
+         sweepCursor = trainingData.cursor();
+      } // else if (validationSplit > 0.0 && numTrainingSets > 1)
+      
+   } // public void holdOutValidation()
+   
+   
+   /**
+    * Trains the network by adjusting the weights in order to minimize error.
+    * Utilizes the backpropagation algorithm to adjust the weights.
+    * 
+    * Training sets are read in order through a cursor over the training data, going
+    * back to the first one after the last. A run resumed from a checkpoint starts at
+    * its iteration, reading past the training sets of the epoch already trained on,
+    * with its running errors.
+    * 
+    * The total error is only swept over every training set once each evaluation
+    * interval. In between, the errors seen by the forward passes are summed into a
+    * running error for the current epoch. An epoch whose running error is at or
+    * below the minimum error also triggers a sweep, so training always stops on an
+    * exact total error.
+    * 
+    * With a batch size above one, the weight changes of batchSize training sets are
+    * accumulated and applied together by trainBatch(), using a pool of threads when
+    * more than one thread is configured. Epochs, sweeps and saves that fall inside a
+    * batch take effect once the batch has been applied.
+    * 
+    * The configuration and training sets are saved once before training starts.
+    * Checkpoints of the weights are handed to a CheckpointWriter, which saves them on
+    * its own thread while training carries on. With validation sets, snapshots are
+    * likewise handed to a ValidationMonitor, which can stop training early, and the
+    * best weights it saw are the ones kept, if it measured any. The reason training
+    * stopped is decided on the weights that are kept.
+    */
+   public void train()   
+   {
+      try
+      {
+         holdOutValidation();
+      }
+      catch (IOException e)
+      {
+         System.out.println("Exception" + e.toString());
+         return;
+      }
+      
+      if (float32)
+      {
+         roundWeights();
+      }
+      
+      int numIterations = resumeIteration;
+      double totalError = getTotalError();
+      double epochError = resumeIteration > 0 ? resumeEpochError : totalError;
+      double runningError = resumeRunningError;
+      boolean errorCurrent = true;
+      boolean minErrorReached = false;
+      trainingSetHash = hashTrainingSets();
+      saveControl(outputFile);
+      CheckpointWriter writer = new CheckpointWriter();
+      ValidationMonitor monitor = validationData == null ? null : new ValidationMonitor();
+      Cursor cursor = trainingData.cursor();
+      int skip = numIterations % numTrainingSets;
+      
+      for (int s = 0; s < skip; s += batchSize)
+      {
+         cursor.next(batchRows, Math.min(batchSize, skip - s));
+      }
+      
+      if (telemetryEnabled)
+      {
+         try
+         {
+            telemetry = new Telemetry(weights, () -> learningRate(optimizer.steps), metricsFile, metricsMillis);
+         }
+         catch (JMException | IOException e)
+         {
+            System.out.println("telemetry unavailable: " + e);
+         }
+      } // if (telemetryEnabled)
+      
+      long start = System.currentTimeMillis();
+      
+      while (totalError > minError && numIterations < maxNumberIterations && (monitor == null || !monitor.stopped))
+      {
+         
+         int previous = numIterations;
+         
+         if (batchSize == 1)
+         {
+            cursor.next(batchRows, 1);
+            
+            if (telemetry != null)
+            {
+               telemetry.beforeStep();
+            }
+            
+            long t0 = telemetry == null ? 0 : System.nanoTime();
+            forwardPass(batchRows, 0, 1, workspaces[0]);
+            long t1 = telemetry == null ? 0 : System.nanoTime();
+            backpropagation(workspaces[0]);
+            
+            if (telemetry != null)
+            {
+               telemetry.forwardNanos += t1 - t0;
+               telemetry.backwardNanos += System.nanoTime() - t1;
+               telemetry.afterStep();
+            }
+            
+            runningError += workspaces[0].sampleError;
+            numIterations++;
+         } // if (batchSize == 1)
+         else
+         {
+            int count = Math.min(batchSize, maxNumberIterations - numIterations);
+            cursor.next(batchRows, count);
+            runningError += trainBatch(count);
+            numIterations += count;
+         }
+         
+         long evaluated = telemetry == null ? 0 : System.nanoTime();
+         
+         errorCurrent = false;
+         boolean epochEnded = numIterations / numTrainingSets > previous / numTrainingSets;
+         
+         if (epochEnded)
+         {
+            epochError = runningError;
+            runningError = 0.0;
+         }
+         
+         if (numIterations / evaluationInterval > previous / evaluationInterval || 
+             (epochEnded && epochError <= minError))
+         {
+            totalError = getTotalError();
+            errorCurrent = true;
+         }
+         
+         if (monitor != null && numIterations / validationInterval > previous / validationInterval)
+         {
+             monitor.submit(numIterations);
+         }
+         
+         long checkpointed = telemetry == null ? 0 : System.nanoTime();
+         
+         if (numIterations / writeFrequency > previous / writeFrequency)
+         {
+             writer.submit(numIterations, runningError, epochError);
+         }
+         
+         if (telemetry != null)
+         {
+            long now = System.nanoTime();
+            telemetry.evaluationNanos += checkpointed - evaluated;
+            telemetry.checkpointNanos += now - checkpointed;
+            telemetry.totalError = totalError;
+            telemetry.epochError = epochError;
+            telemetry.iterations = numIterations;
+         } // if (telemetry != null)
+         
+      } // while (totalError > minError && numIterations < maxNumberIterations && ...)
+
+      long end = System.currentTimeMillis();
+      cursor.close();
+      
+      if (!errorCurrent)
+      {
+         totalError = getTotalError();
+      }
+      
+      boolean lastReachedMinError = totalError < minError;
+      boolean restored = false;
+      
+      if (monitor != null)
+      {
+         monitor.submit(numIterations);
+         monitor.close();
+         
+         if (monitor.bestIteration >= 0)
+         {
+            for (int n = 0; n < numLayers - 1; n++)
+            {
+               System.arraycopy(monitor.best[n], 0, weights[n], 0, weights[n].length);
+            }
+            
+            totalError = getTotalError();
+            restored = true;
+         } // if (monitor.bestIteration >= 0)
+      } // if (monitor != null)
+      
+      if (totalError < minError) 
+      {
+         minErrorReached = true;
+      }
+
+      System.out.println("REPORT: ");
+      System.out.println();
+      System.out.print("reason for termination: ");
+
+      if (minErrorReached) 
+      {
+         System.out.println("error threshold reached");
+      } 
+      else if (lastReachedMinError)
+      {
+         System.out.println("error threshold reached, then the weights of the best validation error restored");
+      } 
+      else if (monitor != null && monitor.stopped)
+      {
+         System.out.println("validation error stopped improving");
+      } 
+      else 
+      {
+         System.out.println("maximum number of iterations reached");
+      }
+
+      System.out.println("error threshold was: " + minError);
+      System.out.println("total error was: " + totalError);
+      System.out.println("running error over the last epoch: " + epochError);
+      System.out.println("max number of iterations: " + maxNumberIterations);
+      System.out.println("number of iterations: " + numIterations);
+      
+      if (monitor != null)
+      {
+         System.out.println("validation sets: " + validationData.size());
+         System.out.println(restored ? "best validation error: " + monitor.bestError + " at iteration " + monitor.bestIteration
+                                     : "no validation error was measured, the last weights were kept");
+         System.out.println("validation evaluations: " + monitor.evaluations 
+                            + ", skipped while the monitor was busy: " + monitor.coalesced);
+      }
+      System.out.println();
+      
+      System.out.println ("training time: " + (end - start) + " milliseconds");
+      
+      writer.submit(numIterations, runningError, epochError);
+      writer.close();
+      System.out.println("checkpoints skipped while the writer was busy: " + writer.coalesced);
+      
+      if (telemetry != null)
+      {
+         telemetry.totalError = totalError;
+         telemetry.close();
+         System.out.println(telemetry.summary());
+         telemetry = null;
+      }
+      
+      saveWeights(outputFile, weights, numIterations);
+      System.out.println();
+      
+      runTrainingSet();
+      System.out.println("number of iterations: " + numIterations);
+
+   } // public void train()
+   
+   
+   /**
+    * Holds the activations, deltas and gradients of one training thread, so that
+    * threads training different training sets never share scratch memory. Each
+    * layer has its own arrays, holding one row per training set of a block, so that
+    * a block can be run through the weights together. Layer 0 of activations holds
+    * the inputs. A float32 workspace holds its activations and deltas in the float
+    * arrays instead, and sums the gradients of a block in float.
+    */
+   public class Workspace
+   {
+      int block;
+      double[][] activations;
+      double[][] deltas;
+      float[][] activations32;
+      float[][] deltas32;
+      float[][] gradients32;
+      double[][] gradients;
+      double sampleError;
+      double shardError;
+      long forwardNanos;
+      long backwardNanos;
+      
+      
+      /**
+       * Allocates the scratch memory for the current configuration.
+       */
+      Workspace()
+      {
+         this(batchSize > 1 ? Math.min(batchSize, SAMPLE_BLOCK) : 1, float32);
+      }
+      
+      
+      /**
+       * Allocates the scratch memory for blocks of the given size. Gradients are only
+       * allocated when training in batches, in float32, or with an optimizer other
+       * than plain gradient descent, which can change the weights during the backward
+       * pass.
+       * 
+       * @param block  the number of training sets run through the weights together
+       * @param single whether the passes run in float32
+       */
+      Workspace(int block, boolean single)
+      {
+         this.block = block;
+         
+         if (single)
+         {
+            activations32 = new float[numLayers][];
+            deltas32 = new float[numLayers][];
+            gradients32 = new float[numLayers - 1][];
+            
+            for (int n = 0; n < numLayers - 1; n++)
+            {
+               gradients32[n] = new float[weights[n].length];
+            }
+         }
+         else
+         {
+            activations = new double[numLayers][];
+            deltas = new double[numLayers][];
+         }
+         
+         for (int n = 0; n < numLayers; n++)
+         {
+            if (single)
+            {
+               activations32[n] = new float[block * numNodes[n]];
+               deltas32[n] = n > 0 ? new float[block * numNodes[n]] : null;
+            }
+            else
+            {
+               activations[n] = new double[block * numNodes[n]];
+               deltas[n] = n > 0 ? new double[block * numNodes[n]] : null;
+            }
+         } // for (int n = 0; n < numLayers; n++)
+         
+         if (batchSize > 1 || !(optimizer instanceof Sgd) || single)
+         {
+            gradients = new double[numLayers - 1][];
+            
+            for (int n = 0; n < numLayers - 1; n++)
+            {
+               gradients[n] = new double[weights[n].length];
+            }
+         }
+      } // Workspace(int block, boolean single)
+      
+      
+      /**
+       * Accumulates the gradients of a range of the training sets in batchRows into
+       * this workspace, a block at a time, and sums their errors into shardError.
+       * With telemetry the passes of the shard are also timed.
+       * 
+       * @param from the first training set of the shard
+       * @param to   the training set after the last one of the shard
+       */
+      void trainShard(int from, int to)
+      {
+         shardError = 0.0;
+         
+         if (telemetry != null)
+         {
+            forwardNanos = 0;
+            backwardNanos = 0;
+            
+            for (int a = from; a < to; a += block)
+            {
+               int count = Math.min(block, to - a);
+               long t0 = System.nanoTime();
+               forwardPass(batchRows, a, count, this);
+               long t1 = System.nanoTime();
+               accumulateGradients(count, this);
+               forwardNanos += t1 - t0;
+               backwardNanos += System.nanoTime() - t1;
+               shardError += sampleError;
+            }
+            return;
+         } // if (telemetry != null)
+         
+         for (int a = from; a < to; a += block)
+         {
+            int count = Math.min(block, to - a);
+            forwardPass(batchRows, a, count, this);
+            accumulateGradients(count, this);
+            shardError += sampleError;
+         }
+      } // void trainShard(int from, int to)
+      
+   } // public class Workspace
+   
+   
+   /**
+    * Runs a network that has been trained, for serving. A predictor holds its own
+    * copy of the weights and never changes them, so any number of threads can share
+    * one. Each thread that calls it gets its own scratch layers the first time, and
+    * after that no call allocates anything.
+    * 
+    * A quantized predictor holds int8 codes instead of double weights. The codes of
+    * each layer are stored transposed, one run of codes per node the weights lead
+    * to, so that every sum is one integer dot product.
+    */
+   public static final class Predictor
+   {
+      private final int[] nodes;
+      private final double[][] weights;
+      private final byte[][] codes;
+      private final double[][] scales;
+      private final Activation[] functions;
+      private final ThreadLocal<double[][]> scratch;
+      private final ThreadLocal<byte[]> quantizedInputs;
+      
+      
+      /**
+       * Copies the layer sizes and weights of a network.
+       * 
+       * @param nodes     the number of nodes in each layer
+       * @param weights   the weights between each pair of layers, as stored by allocateMemory()
+       * @param functions the activation function of each layer after the first
+       */
+      public Predictor(int[] nodes, double[][] weights, Activation[] functions)
+      {
+         this(nodes, copy(weights), null, null, functions);
+      }
+      
+      
+      /**
+       * @param nodes     the number of nodes in each layer
+       * @param weights   the weights, kept as they are, or null if quantized
+       * @param codes     the int8 codes of the weights, or null if not quantized
+       * @param scales    the scales of the codes of each layer, one per node or one in all
+       * @param functions the activation function of each layer after the first
+       */
+      private Predictor(int[] nodes, double[][] weights, byte[][] codes, double[][] scales, Activation[] functions)
+      {
+         this.nodes = nodes.clone();
+         this.functions = functions.clone();
+         this.weights = weights;
+         this.codes = codes;
+         this.scales = scales;
+         
+         scratch = ThreadLocal.withInitial(() -> 
+         {
+            double[][] layers = new double[this.nodes.length][];
+            
+            for (int n = 0; n < layers.length; n++)
+            {
+               layers[n] = new double[SAMPLE_BLOCK * this.nodes[n]];
+            }
+            
+            return layers;
+         });
+         
+         quantizedInputs = ThreadLocal.withInitial(() -> new byte[Arrays.stream(this.nodes).max().getAsInt()]);
+      } // private Predictor(int[] nodes, double[][] weights, byte[][] codes, double[][] scales, Activation[] functions)
+      
+      
+      /**
+       * @param weights the weights between each pair of layers
+       * @return a copy of the weights
+       */
+      private static double[][] copy(double[][] weights)
+      {
+         double[][] copy = new double[weights.length][];
+         
+         for (int n = 0; n < weights.length; n++)
+         {
+            copy[n] = weights[n].clone();
+         }
+         
+         return copy;
+      } // private static double[][] copy(double[][] weights)
+      
+      
+      /**
+       * Quantizes the weights of this predictor to int8. A weight w of a node with
+       * scale s is stored as round(w / s), where s is the largest magnitude of the
+       * weights leading to the node, or of the layer, divided by 127.
+       * 
+       * @param perLayer whether each layer has one scale rather than one per node
+       * @return a predictor running on the quantized weights
+       */
+      public Predictor quantize(boolean perLayer)
+      {
+         byte[][] q = new byte[weights.length][];
+         double[][] s = new double[weights.length][];
+         
+         for (int n = 0; n < weights.length; n++)
+         {
+            int rows = nodes[n];
+            int cols = nodes[n + 1];
+            q[n] = new byte[rows * cols];
+            s[n] = new double[perLayer ? 1 : cols];
+            
+            for (int j = 0; j < rows; j++)
+            {
+               for (int k = 0; k < cols; k++)
+               {
+                  int i = perLayer ? 0 : k;
+                  s[n][i] = Math.max(s[n][i], Math.abs(weights[n][j * cols + k]));
+               }
+            }
+            
+            for (int i = 0; i < s[n].length; i++)
+            {
+               s[n][i] = s[n][i] > 0.0 ? s[n][i] / 127.0 : 1.0;
+            }
+            
+            for (int k = 0; k < cols; k++)
+            {
+               double scale = s[n][perLayer ? 0 : k];
+               
+               for (int j = 0; j < rows; j++)
+               {
+                  q[n][k * rows + j] = (byte) Math.rint(weights[n][j * cols + k] / scale);
+               }
+            }
+         } // for (int n = 0; n < weights.length; n++)
+         
+         return new Predictor(nodes, null, q, s, functions);
+         
+      } // public Predictor quantize(boolean perLayer)
+      
+      
+      /**
+       * @return the number of bytes the weights take up, with their scales
+       */
+      public long weightBytes()
+      {
+         long bytes = 0;
+         
+         for (int n = 0; n < nodes.length - 1; n++)
+         {
+            bytes += codes == null ? 8L * weights[n].length : codes[n].length + 8L * scales[n].length;
+         }
+         
+         return bytes;
+      } // public long weightBytes()
+      
+      
+      /**
+       * @return the number of inputs of the network
+       */
+      public int inputs()
+      {
+         return nodes[0];
+      }
+      
+      
+      /**
+       * @return the number of outputs of the network
+       */
+      public int outputs()
+      {
+         return nodes[nodes.length - 1];
+      }
+      
+      
+      /**
+       * Calculates the outputs of the network for one set of inputs.
+       * 
+       * @param in  the inputs
+       * @param out receives the outputs
+       */
+      public void predict(double[] in, double[] out)
+      {
+         predictBatch(in, out, 1);
+      }
+      
+      
+      /**
+       * Calculates the outputs of the network for count sets of inputs, a block of
+       * them at a time so that each row of weights is reused while it is in cache.
+       * 
+       * @param in    the inputs, count rows of inputs() values
+       * @param out   receives the outputs, count rows of outputs() values
+       * @param count the number of sets of inputs
+       */
+      public void predictBatch(double[] in, double[] out, int count)
+      {
+         double[][] layers = scratch.get();
+         int last = nodes.length - 1;
+         
+         for (int first = 0; first < count; first += SAMPLE_BLOCK)
+         {
+            int block = Math.min(SAMPLE_BLOCK, count - first);
+            System.arraycopy(in, first * nodes[0], layers[0], 0, block * nodes[0]);
+            
+            for (int n = 1; n <= last; n++)
+            {
+               if (codes == null)
+               {
+                  multiply(weights[n - 1], nodes[n - 1], nodes[n], layers[n - 1], layers[n], block);
+               }
+               else
+               {
+                  multiplyQuantized(n - 1, layers[n - 1], layers[n], block);
+               }
+               
+               functions[n].apply(layers[n], block, nodes[n]);
+            } // for (int n = 1; n <= last; n++)
+            
+            System.arraycopy(layers[last], 0, out, first * nodes[last], block * nodes[last]);
+         } // for (int first = 0; first < count; first += SAMPLE_BLOCK)
+         
+      } // public void predictBatch(double[] in, double[] out, int count)
+      
+      
+      /**
+       * Multiplies count rows of values by the int8 codes of one layer. Each row is
+       * quantized with its own scale, each sum is taken over integers, and the sum is
+       * turned back into a double by the scales of the row and of the node.
+       * 
+       * @param n     the index of the pair of layers
+       * @param in    the values of the first layer, count rows
+       * @param out   the sums for the second layer, count rows
+       * @param count the number of rows of values
+       */
+      private void multiplyQuantized(int n, double[] in, double[] out, int count)
+      {
+         byte[] q = quantizedInputs.get();
+         int rows = nodes[n];
+         int cols = nodes[n + 1];
+         byte[] c = codes[n];
+         double[] s = scales[n];
+         
+         for (int b = 0; b < count; b++)
+         {
+            double max = 0.0;
+            
+            for (int j = 0; j < rows; j++)
+            {
+               max = Math.max(max, Math.abs(in[b * rows + j]));
+            }
+            
+            double scale = max > 0.0 ? max / 127.0 : 1.0;
+            
+            for (int j = 0; j < rows; j++)
+            {
+               q[j] = (byte) Math.rint(in[b * rows + j] / scale);
+            }
+            
+            for (int k = 0; k < cols; k++)
+            {
+               out[b * cols + k] = dot(q, 0, c, k * rows, rows) * scale * s[s.length == 1 ? 0 : k];
+            } // for (int k = 0; k < cols; k++)
+         } // for (int b = 0; b < count; b++)
+         
+      } // private void multiplyQuantized(int n, double[] in, double[] out, int count)
+      
+   } // public static final class Predictor
+   
+   
+   /**
+    * Checks whether a file starts with the magic number of the binary dataset format.
+    * 
+    * @param file the file to check
+    * @return true if the file is a binary dataset
+    * @throws IOException if the file cannot be read
+    */
+   public static boolean isBinaryDataset(String file) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ))
+      {
+         ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+         
+         while (magic.hasRemaining() && channel.read(magic) >= 0)
+         {
+         }
+         
+         return !magic.hasRemaining() && magic.getInt(0) == MappedData.DATASET_MAGIC;
+      }
+   } // public static boolean isBinaryDataset(String file)
+   
+   
+   /**
+    * Writes every training set to a binary dataset that MappedData can map. Values
+    * are written as doubles, or as floats to halve the file at the cost of their
+    * precision.
+    * 
+    * @param file    the dataset to write
+    * @param float32 whether to write the values as floats
+    * @throws IOException if the file cannot be written
+    */
+   public void saveBinaryDataset(String file, boolean float32) throws IOException
+   {
+      int width = numInputs + numOutputs;
+      int valueBytes = float32 ? 4 : 8;
+      int bytes = Math.max(MappedData.DATASET_HEADER, valueBytes * SWEEP_ROWS * width);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      
+      try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, 
+                                                  StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+      {
+         buffer.putInt(MappedData.DATASET_MAGIC).putInt(MappedData.DATASET_VERSION).putLong(numTrainingSets);
+         buffer.putInt(numInputs).putInt(numOutputs).putInt(valueBytes).putInt(0);
+         buffer.flip();
+         
+         while (buffer.hasRemaining())
+         {
+            channel.write(buffer);
+         }
+         
+         for (int a = 0; a < numTrainingSets; a += SWEEP_ROWS)
+         {
+            int count = Math.min(SWEEP_ROWS, numTrainingSets - a);
+            sweepCursor.next(sweepRows, count);
+            buffer.clear();
+            
+            for (int i = 0; i < count * width; i++)
+            {
+               if (float32)
+               {
+                  buffer.putFloat((float) sweepRows[i]);
+               }
+               else
+               {
+                  buffer.putDouble(sweepRows[i]);
+               }
+            } // for (int i = 0; i < count * width; i++)
+            
+            buffer.flip();
+            
+            while (buffer.hasRemaining())
+            {
+               channel.write(buffer);
+            }
+         } // for (int a = 0; a < numTrainingSets; a += SWEEP_ROWS)
+      } // try (FileChannel channel = ...)
+      
+   } // public void saveBinaryDataset(String file, boolean float32)
+   
+   
+   /**
+    * Saves checkpoints on a dedicated thread. A checkpoint is taken by copying the
+    * weights into the back buffer, which the writer swaps with its front buffer when
+    * it is ready to save. If a checkpoint is taken while the previous one is still
+    * waiting, the newer one replaces it, so a slow disk costs skipped checkpoints
+    * rather than training time.
+    */
+   private class CheckpointWriter implements Runnable
+   {
+      private double[][] front;
+      private double[][] back;
+      private double[][][] frontState;
+      private double[][][] backState;
+      private long frontSteps;
+      private long backSteps;
+      private double[] frontErrors = new double[2];
+      private double[] backErrors = new double[2];
+      private int backIteration;
+      private boolean pending;
+      private boolean closed;
+      private int coalesced;
+      private final Thread thread;
+      
+      
+      /**
+       * Allocates the buffers and starts the writer thread.
+       */
+      CheckpointWriter()
+      {
+         front = new double[numLayers - 1][];
+         back = new double[numLayers - 1][];
+         
+         for (int n = 0; n < numLayers - 1; n++)
+         {
+            front[n] = new double[weights[n].length];
+            back[n] = new double[weights[n].length];
+         }
+         
+         int buffers = optimizer.state.length;
+         frontState = new double[buffers][numLayers - 1][];
+         backState = new double[buffers][numLayers - 1][];
+         
+         for (int b = 0; b < buffers; b++)
+         {
+            for (int n = 0; n < numLayers - 1; n++)
+            {
+               frontState[b][n] = new double[weights[n].length];
+               backState[b][n] = new double[weights[n].length];
+            }
+         }
+         
+         thread = new Thread(this, "checkpoint writer");
+         thread.setDaemon(true);
+         thread.start();
+      } // CheckpointWriter()
+      
+      
+      /**
+       * Takes a checkpoint of the current weights, the optimizer state and the running
+       * errors.
+       * 
+       * @param iteration    the iteration the weights were reached at
+       * @param runningError the running error of the current epoch
+       * @param epochError   the running error of the last whole epoch
+       */
+      synchronized void submit(int iteration, double runningError, double epochError)
+      {
+         if (pending)
+         {
+            coalesced++;
+         }
+         
+         for (int n = 0; n < numLayers - 1; n++)
+         {
+            System.arraycopy(weights[n], 0, back[n], 0, weights[n].length);
+         }
+         
+         for (int b = 0; b < backState.length; b++)
+         {
+            for (int n = 0; n < numLayers - 1; n++)
+            {
+               System.arraycopy(optimizer.state[b][n], 0, backState[b][n], 0, weights[n].length);
+            }
+         }
+         
+         backSteps = optimizer.steps;
+         backErrors[0] = runningError;
+         backErrors[1] = epochError;
+         backIteration = iteration;
+         pending = true;
+         notifyAll();
+      } // synchronized void submit(int iteration, double runningError, double epochError)
+      
+      
+      /**
+       * Saves checkpoints as they are taken until the writer is closed and nothing is
+       * left to save.
+       */
+      @Override
+      public void run()
+      {
+         while (true)
+         {
+            int iteration;
+            
+            synchronized (this)
+            {
+               while (!pending && !closed)
+               {
+                  try
+                  {
+                     wait();
+                  }
+                  catch (InterruptedException e)
+                  {
+                     return;
+                  }
+               } // while (!pending && !closed)
+               
+               if (!pending)
+               {
+                  return;
+               }
+               
+               double[][] swap = front;
+               front = back;
+               back = swap;
+               double[][][] swapState = frontState;
+               frontState = backState;
+               backState = swapState;
+               frontSteps = backSteps;
+               double[] swapErrors = frontErrors;
+               frontErrors = backErrors;
+               backErrors = swapErrors;
+               iteration = backIteration;
+               pending = false;
+            } // synchronized (this)
+            
+            long t0 = System.nanoTime();
+            saveCheckpoint(front, frontState, frontSteps, iteration, frontErrors);
+            
+            if (telemetry != null)
+            {
+               telemetry.checkpointWriteNanos += System.nanoTime() - t0;
+            }
+         } // while (true)
+         
+      } // public void run()
+      
+      
+      /**
+       * Waits for the last checkpoint to be saved and stops the writer thread.
+       */
+      void close()
+      {
+         synchronized (this)
+         {
+            closed = true;
+            notifyAll();
+         }
+         
+         try
+         {
+            thread.join();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+      } // void close()
+      
+   } // private class CheckpointWriter implements Runnable
+   
+   
+   /**
+    * Evaluates snapshots of the weights on the validation sets on a dedicated thread,
+    * keeps the best weights seen and calls for training to stop once the validation
+    * error has not improved for patience evaluations. Like the checkpoint writer, a
+    * snapshot taken while the previous one is still waiting replaces it.
+    */
+   private class ValidationMonitor implements Runnable
+   {
+      private final double[][] back;
+      private final double[][] best;
+      private final Cursor cursor;
+      private final double[] rows;
+      private final double[] inputs;
+      private final double[] outputs;
+      private int backIteration;
+      private boolean pending;
+      private boolean closed;
+      private int evaluations;
+      private int coalesced;
+      private int stale;
+      private double bestError = Double.POSITIVE_INFINITY;
+      private int bestIteration = -1;
+      private volatile boolean stopped;
+      private final Thread thread;
+      
+      
+      /**
+       * Allocates the buffers and starts the monitor thread.
+       */
+      ValidationMonitor()
+      {
+         back = new double[numLayers - 1][];
+         best = new double[numLayers - 1][];
+         
+         for (int n = 0; n < numLayers - 1; n++)
+         {
+            back[n] = new double[weights[n].length];
+            best[n] = new double[weights[n].length];
+         }
+         
+         cursor = validationData.cursor();
+         rows = new double[SWEEP_ROWS * (numInputs + numOutputs)];
+         inputs = new double[SWEEP_ROWS * numInputs];
+         outputs = new double[SWEEP_ROWS * numOutputs];
+         thread = new Thread(this, "validation monitor");
+         thread.setDaemon(true);
+         thread.start();
+      } // ValidationMonitor()
+      
+      
+      /**
+       * Takes a snapshot of the current weights to be evaluated.
+       * 
+       * @param iteration the iteration the weights were reached at
+       */
+      synchronized void submit(int iteration)
+      {
+         if (pending)
+         {
+            coalesced++;
+         }
+         
+         for (int n = 0; n < numLayers - 1; n++)
+         {
+            System.arraycopy(weights[n], 0, back[n], 0, weights[n].length);
+         }
+         
+         backIteration = iteration;
+         pending = true;
+         notifyAll();
+      } // synchronized void submit(int iteration)
+      
+      
+      /**
+       * Evaluates snapshots as they are taken until the monitor is closed and nothing
+       * is left to evaluate.
+       */
+      @Override
+      public void run()
+      {
+         while (true)
+         {
+            int iteration;
+            Predictor predictor;
+            
+            synchronized (this)
+            {
+               while (!pending && !closed)
+               {
+                  try
+                  {
+                     wait();
+                  }
+                  catch (InterruptedException e)
+                  {
+                     return;
+                  }
+               } // while (!pending && !closed)
+               
+               if (!pending)
+               {
+                  return;
+               }
+               
+               predictor = new Predictor(numNodes, back, activationFunctions);
+               iteration = backIteration;
+               pending = false;
+            } // synchronized (this)
+            
+            double error = evaluate(predictor);
+            evaluations++;
+            
+            if (error < bestError)
+            {
+               bestError = error;
+               bestIteration = iteration;
+               stale = 0;
+               
+               for (int n = 0; n < numLayers - 1; n++)
+               {
+                  System.arraycopy(predictor.weights[n], 0, best[n], 0, best[n].length);
+               }
+            } // if (error < bestError)
+            else if (patience > 0 && ++stale >= patience)
+            {
+               stopped = true;
+            }
+         } // while (true)
+         
+      } // public void run()
+      
+      
+      /**
+       * Sums the error of the snapshot over all the validation sets, SWEEP_ROWS at a
+       * time.
+       * 
+       * @param predictor a predictor holding a copy of the snapshot
+       * @return the validation error
+       */
+      private double evaluate(Predictor predictor)
+      {
+         int size = validationData.size();
+         int width = numInputs + numOutputs;
+         double error = 0.0;
+         
+         for (int a = 0; a < size; a += SWEEP_ROWS)
+         {
+            int count = Math.min(SWEEP_ROWS, size - a);
+            cursor.next(rows, count);
+            
+            for (int r = 0; r < count; r++)
+            {
+               System.arraycopy(rows, r * width, inputs, r * numInputs, numInputs);
+            }
+            
+            predictor.predictBatch(inputs, outputs, count);
+            
+            for (int r = 0; r < count; r++)
+            {
+               for (int e = 0; e < numOutputs; e++)
+               {
+                  error += loss.error(rows[r * width + numInputs + e], outputs[r * numOutputs + e]);
+               }
+            }
+         } // for (int a = 0; a < size; a += SWEEP_ROWS)
+         
+         return error;
+         
+      } // private double evaluate(Predictor predictor)
+      
+      
+      /**
+       * Waits for the last snapshot to be evaluated and stops the monitor thread.
+       */
+      void close()
+      {
+         synchronized (this)
+         {
+            closed = true;
+            notifyAll();
+         }
+         
+         try
+         {
+            thread.join();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         
+         cursor.close();
+      } // void close()
+      
+   } // private class ValidationMonitor implements Runnable
+   
+   
+   /**
+    * Prints training sets and weights through one large buffer, to the console or to
+    * a report file, as text in the format the console has always used, as CSV with a
+    * header line, or as JSON lines. Lines are built in a reused StringBuilder, so a
+    * training set costs no more than appending its numbers. Nothing reaches the
+    * console until the buffer fills or the report is closed, so the report must be
+    * closed before anything else is printed.
+    */
+   public class Report
+   {
+      private final PrintWriter out;
+      private final boolean console;
+      private final StringBuilder line = new StringBuilder();
+      private boolean headed;
+      
+      
+      /**
+       * Opens a report on the console.
+       */
+      Report()
+      {
+         out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), false);
+         console = true;
+      }
+      
+      
+      /**
+       * Opens a report in a file, or on the console if there is no file.
+       * 
+       * @param file   the file to write the report to, or null
+       * @param append whether to add to the end of the file rather than replace it
+       * @throws FileNotFoundException if the file cannot be created
+       */
+      Report(String file, boolean append) throws FileNotFoundException
+      {
+         console = file == null;
+         out = console ? new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), false)
+                       : new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append)), 1 << 16), false);
+      } // Report(String file, boolean append) throws FileNotFoundException
+      
+      
+      /**
+       * Prints the outputs, expected outputs and error of one training set.
+       * 
+       * @param caseNum  the number of the training set, counting from 1
+       * @param outputs  the calculated outputs
+       * @param oOff     the index of the first output in outputs
+       * @param expected the expected outputs
+       * @param eOff     the index of the first expected output in expected
+       * @param error    the error of the training set
+       */
+      void trainingSet(int caseNum, double[] outputs, int oOff, double[] expected, int eOff, double error)
+      {
+         line.setLength(0);
+         
+         if (reportFormat.equals("json"))
+         {
+            line.append("{\"case\":").append(caseNum).append(",\"outputs\":[");
+            
+            for (int e = 0; e < numOutputs; e++)
+            {
+               number(e == 0 ? line : line.append(','), outputs[oOff + e]);
+            }
+            line.append("],\"expected\":[");
+            
+            for (int e = 0; e < numOutputs; e++)
+            {
+               number(e == 0 ? line : line.append(','), expected[eOff + e]);
+            }
+            number(line.append("],\"error\":"), error).append('}');
+         } // if (reportFormat.equals("json"))
+         else if (reportFormat.equals("csv"))
+         {
+            if (!headed)
+            {
+               out.print("case");
+               
+               for (int e = 1; e <= numOutputs; e++)
+               {
+                  out.print(",output" + e);
+               }
+               
+               for (int e = 1; e <= numOutputs; e++)
+               {
+                  out.print(",expected" + e);
+               }
+               out.println(",error");
+               headed = true;
+            } // if (!headed)
+            
+            line.append(caseNum);
+            
+            for (int e = 0; e < numOutputs; e++)
+            {
+               line.append(',').append(outputs[oOff + e]);
+            }
+            
+            for (int e = 0; e < numOutputs; e++)
+            {
+               line.append(',').append(expected[eOff + e]);
+            }
+            line.append(',').append(error);
+         } // else if (reportFormat.equals("csv"))
+         else
+         {
+            line.append("CASE ").append(caseNum).append('\n');
+            
+            for (int e = 0; e < numOutputs; e++)
+            {
+               line.append("output: ").append(outputs[oOff + e]).append(" expected: ").append(expected[eOff + e]).append('\n');
+            }
+            line.append("error: ").append(error).append('\n');
+         } // else
+         
+         out.println(line);
+      } // void trainingSet(int caseNum, double[] outputs, int oOff, double[] expected, int eOff, double error)
+      
+      
+      /**
+       * Prints one weight, labeled by its indices as printWeights() labels them.
+       * 
+       * @param n      the layer of the weight
+       * @param j      the node the weight edge branches off from
+       * @param k      the node the weight edge connects to
+       * @param weight the weight
+       */
+      void weight(int n, int j, int k, double weight)
+      {
+         line.setLength(0);
+         
+         if (reportFormat.equals("json"))
+         {
+            line.append("{\"layer\":").append(n).append(",\"from\":").append(j).append(",\"to\":").append(k);
+            number(line.append(",\"weight\":"), weight).append('}');
+         }
+         else if (reportFormat.equals("csv"))
+         {
+            if (!headed)
+            {
+               out.println("layer,from,to,weight");
+               headed = true;
+            }
+            line.append(n).append(',').append(j).append(',').append(k).append(',').append(weight);
+         } // else if (reportFormat.equals("csv"))
+         else
+         {
+            line.append('w').append(n).append(j).append(k).append(' ').append(weight);
+         }
+         
+         out.println(line);
+      } // void weight(int n, int j, int k, double weight)
+      
+      
+      /**
+       * Ends a report of JSON lines with a record of the totals. Text and CSV reports
+       * leave the totals to the console report.
+       * 
+       * @param totalError the total error of all the training sets
+       * @param maxError   the largest error of any training set
+       */
+      void summary(double totalError, double maxError)
+      {
+         if (reportFormat.equals("json"))
+         {
+            line.setLength(0);
+            line.append("{\"cases\":").append(numTrainingSets);
+            number(line.append(",\"totalError\":"), totalError);
+            number(line.append(",\"maxError\":"), maxError).append('}');
+            out.println(line);
+         }
+      } // void summary(double totalError, double maxError)
+      
+      
+      /**
+       * Prints how the int8 weights compare with the double weights, as runQuantized()
+       * measures them: as a block of lines in text, as one row under its own header in
+       * CSV, or as one record in JSON.
+       * 
+       * @param scales        row or layer, the scales of the quantization
+       * @param totalError    the total error with the int8 weights
+       * @param exactError    the total error with the double weights
+       * @param maxError      the largest error of any training set with the int8 weights
+       * @param maxDifference the largest difference of any output between the two
+       * @param bytes         the memory of the int8 weights and their scales
+       * @param exactBytes    the memory of the double weights
+       * @param rate          training sets scored per second with the int8 weights
+       * @param exactRate     training sets scored per second with the double weights
+       */
+      void quantized(String scales, double totalError, double exactError, double maxError, double maxDifference,
+                     long bytes, long exactBytes, double rate, double exactRate)
+      {
+         line.setLength(0);
+         
+         if (reportFormat.equals("json"))
+         {
+            line.append("{\"quantized\":\"").append(scales).append('"');
+            number(line.append(",\"totalError\":"), totalError);
+            number(line.append(",\"doubleTotalError\":"), exactError);
+            number(line.append(",\"maxError\":"), maxError);
+            number(line.append(",\"maxOutputDifference\":"), maxDifference);
+            line.append(",\"weightBytes\":").append(bytes).append(",\"doubleWeightBytes\":").append(exactBytes);
+            line.append(",\"setsPerSecond\":").append(Math.round(rate));
+            line.append(",\"doubleSetsPerSecond\":").append(Math.round(exactRate)).append('}');
+         } // if (reportFormat.equals("json"))
+         else if (reportFormat.equals("csv"))
+         {
+            out.println("quantized,totalError,doubleTotalError,maxError,maxOutputDifference,"
+                        + "weightBytes,doubleWeightBytes,setsPerSecond,doubleSetsPerSecond");
+            line.append(scales).append(',').append(totalError).append(',').append(exactError);
+            line.append(',').append(maxError).append(',').append(maxDifference);
+            line.append(',').append(bytes).append(',').append(exactBytes);
+            line.append(',').append(Math.round(rate)).append(',').append(Math.round(exactRate));
+         } // else if (reportFormat.equals("csv"))
+         else
+         {
+            line.append("\nQUANTIZED (int8, ").append(scales).append(" scales): \n\n");
+            line.append("total error: ").append(totalError).append(" against ").append(exactError).append(" double\n");
+            line.append("max error from training sets: ").append(maxError).append('\n');
+            line.append("max output difference from double: ").append(maxDifference).append('\n');
+            line.append("weights: ").append(bytes).append(" bytes against ").append(exactBytes).append(" double\n");
+            line.append(String.format("throughput: %.0f training sets per second against %.0f double", 
+                                      rate, exactRate));
+         } // else
+         
+         out.println(line);
+      } // void quantized(...)
+      
+      
+      /**
+       * Appends a number to a JSON line, as null if it is not finite, since JSON has
+       * no infinities or NaN.
+       * 
+       * @param to    the line
+       * @param value the number
+       * @return the line
+       */
+      private StringBuilder number(StringBuilder to, double value)
+      {
+         return Double.isFinite(value) ? to.append(value) : to.append("null");
+      }
+      
+      
+      /**
+       * Writes out whatever is buffered, and closes the file if the report has one.
+       */
+      void close()
+      {
+         if (console)
+         {
+            out.flush();
+         }
+         else
+         {
+            out.close();
+         }
+      } // void close()
+      
+   } // public class Report
+   
+   
+   /**
+    * Holds one chunk of the training sets being swept and the scratch to run them
+    * through the weights, a block of SAMPLE_BLOCK at a time, so that threads sweeping
+    * different chunks never share memory. Each row gets the same sums as
+    * calculateNode() would give it.
+    */
+   public class Sweep
+   {
+      double[] rows;
+      double[][] layers;
+      double[] outputs;
+      double[] caseErrors;
+      int count;
+      double error;
+      double maxError;
+      
+      
+      /**
+       * Allocates the scratch for a chunk of SWEEP_ROWS training sets.
+       */
+      Sweep()
+      {
+         rows = new double[SWEEP_ROWS * (numInputs + numOutputs)];
+         layers = new double[numLayers][];
+         outputs = new double[SWEEP_ROWS * numOutputs];
+         caseErrors = new double[SWEEP_ROWS];
+         
+         for (int n = 0; n < numLayers; n++)
+         {
+            layers[n] = new double[SAMPLE_BLOCK * numNodes[n]];
+         }
+      } // Sweep()
+      
+      
+      /**
+       * Runs the count training sets in rows through the weights, keeping their
+       * outputs and errors, and sums the errors into error in order.
+       */
+      void run()
+      {
+         int last = numLayers - 1;
+         int width = numInputs + numOutputs;
+         error = 0.0;
+         maxError = 0.0;
+         
+         for (int first = 0; first < count; first += SAMPLE_BLOCK)
+         {
+            int block = Math.min(SAMPLE_BLOCK, count - first);
+            
+            for (int r = 0; r < block; r++)
+            {
+               System.arraycopy(rows, (first + r) * width, layers[0], r * numInputs, numInputs);
+            }
+            
+            for (int n = 1; n <= last; n++)
+            {
+               multiply(weights[n - 1], numNodes[n - 1], numNodes[n], layers[n - 1], layers[n], block);
+               activationFunctions[n].apply(layers[n], block, numNodes[n]);
+            }
+            
+            System.arraycopy(layers[last], 0, outputs, first * numOutputs, block * numOutputs);
+            
+            for (int r = first; r < first + block; r++)
+            {
+               double currError = 0.0;
+               
+               for (int e = 0; e < numOutputs; e++)
+               {
+                  double caseError = calculateError(rows[r * width + numInputs + e], outputs[r * numOutputs + e]);
+                  error += caseError;
+                  currError += caseError;
+               }
+               
+               caseErrors[r] = currError;
+               maxError = Math.max(maxError, currError);
+            } // for (int r = first; r < first + block; r++)
+         } // for (int first = 0; first < count; first += SAMPLE_BLOCK)
+         
+      } // void run()
+      
+      
+      /**
+       * Prints the outputs and error of the training sets of the chunk that the
+       * verbosity asks for to the report.
+       * 
+       * @param start  the index of the first training set of the chunk
+       * @param report the report to print them to
+       */
+      void report(int start, Report report)
+      {
+         int width = numInputs + numOutputs;
+         int step = verbosity.equals("sampled") ? sampleEvery : 1;
+         
+         for (int r = (step - start % step) % step; r < count; r += step)
+         {
+            report.trainingSet(start + r + 1, outputs, r * numOutputs, rows, r * width + numInputs, caseErrors[r]);
+         }
+      } // void report(int start, Report report)
+      
+   } // public class Sweep
+   
+   
+   /**
+    * Runs one chunk of a sweep on the thread pool.
+    */
+   private static class SweepTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+      private final Sweep sweep;
+      
+      
+      /**
+       * Creates the task for a chunk.
+       * 
+       * @param sweep the sweep holding the chunk
+       */
+      SweepTask(Sweep sweep)
+      {
+         this.sweep = sweep;
+      }
+      
+      
+      /**
+       * Sweeps the chunk.
+       */
+      @Override
+      protected void compute()
+      {
+         sweep.run();
+      }
+      
+   } // private static class SweepTask extends RecursiveAction
+   
+   
+   /**
+    * Runs one shard of a batch on the thread pool. The task is made once per
+    * workspace and reinitialized for every batch.
+    */
+   private static class ShardTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+      private final Workspace ws;
+      int from;
+      int to;
+      
+      
+      /**
+       * Creates the task for the shard of a workspace.
+       * 
+       * @param ws the workspace of the shard
+       */
+      ShardTask(Workspace ws)
+      {
+         this.ws = ws;
+      }
+      
+      
+      /**
+       * Trains the shard.
+       */
+      @Override
+      protected void compute()
+      {
+         ws.trainShard(from, to);
+      }
+      
+   } // private static class ShardTask extends RecursiveAction
+   
+   
+   /**
+    * Sums and applies the gradients of one range of the weights on the thread pool.
+    * The task is made once per thread and reinitialized for every step.
+    */
+   private static class GradientTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+      private final Perceptron3 network;
+      private final int from;
+      private final int to;
+      double rate;
+      
+      
+      /**
+       * Creates the task for a range of the weights.
+       * 
+       * @param network the network whose weights are stepped
+       * @param from    the index of the first weight of the range
+       * @param to      the index after the last weight of the range
+       */
+      GradientTask(Perceptron3 network, int from, int to)
+      {
+         this.network = network;
+         this.from = from;
+         this.to = to;
+      }
+      
+      
+      /**
+       * Applies the range.
+       */
+      @Override
+      protected void compute()
+      {
+         network.applyGradients(from, to, rate);
+      }
+      
+   } // private static class GradientTask extends RecursiveAction
+   
+   
+   /**
+    * Moves the weights along their gradients. The gradients point the way that
+    * lowers the error, as the backward pass leaves them, and are cleared once used.
+    * Any state an optimizer keeps is held in buffers shaped like the weights, which
+    * are allocated once and updated in place.
+    */
+   abstract static class Optimizer
+   {
+      final String name;
+      final double[][][] state;
+      float[][] rounded;
+      long steps;
+      
+      
+      /**
+       * @param name    the name of the optimizer, as given in the configuration
+       * @param buffers the number of state buffers
+       * @param weights the weights the buffers are shaped like
+       */
+      Optimizer(String name, int buffers, double[][] weights)
+      {
+         this.name = name;
+         state = new double[buffers][weights.length][];
+         
+         for (int b = 0; b < buffers; b++)
+         {
+            for (int n = 0; n < weights.length; n++)
+            {
+               state[b][n] = new double[weights[n].length];
+            }
+         }
+      } // Optimizer(String name, int buffers, double[][] weights)
+      
+      
+      /**
+       * Takes one step with the gradients of a training set or batch.
+       * 
+       * @param weights   the weights to move
+       * @param gradients the gradients, cleared afterwards
+       * @param rate      the learning rate of this step
+       */
+      void step(double[][] weights, double[][] gradients, double rate)
+      {
+         steps++;
+         
+         for (int n = 0; n < weights.length; n++)
+         {
+            update(n, weights[n], gradients[n], rate, 0, weights[n].length);
+         }
+      } // void step(double[][] weights, double[][] gradients, double rate)
+      
+      
+      /**
+       * Updates a range of the weights between one pair of layers and clears their
+       * gradients. Each weight is updated on its own, so ranges can be updated on
+       * different threads; steps must already count the step being taken. If rounded
+       * is set, each weight is also rounded into it as soon as it is updated, so the
+       * float copy of the weights never needs a pass of its own.
+       * 
+       * @param n    the index of the pair of layers, for the state buffers
+       * @param w    the weights
+       * @param g    the gradients
+       * @param rate the learning rate
+       * @param from the index of the first weight to update
+       * @param to   the index after the last weight to update
+       */
+      abstract void update(int n, double[] w, double[] g, double rate, int from, int to);
+      
+   } // abstract static class Optimizer
+   
+   
+   /**
+    * Makes the optimizer with the given name for the current configuration.
+    * 
+    * @param name sgd, momentum, nesterov, rmsprop or adam
+    * @return the optimizer, with its state buffers allocated
+    */
+   public Optimizer optimizer(String name)
+   {
+      switch (name)
+      {
+         case "sgd":
+            return new Sgd(weights);
+         case "momentum":
+            return new Momentum(weights, momentum, false);
+         case "nesterov":
+            return new Momentum(weights, momentum, true);
+         case "rmsprop":
+            return new RmsProp(weights, rho, epsilon);
+         case "adam":
+            return new Adam(weights, momentum, beta2, epsilon);
+         default:
+            throw new IllegalArgumentException("unknown optimizer: " + name);
+      }
+   } // public Optimizer optimizer(String name)
+   
+   
+   /**
+    * Plain gradient descent, w += rate * g.
+    */
+   static final class Sgd extends Optimizer
+   {
+      /**
+       * @param weights the weights to optimize
+       */
+      Sgd(double[][] weights)
+      {
+         super("sgd", 0, weights);
+      }
+      
+      
+      @Override
+      void update(int n, double[] w, double[] g, double rate, int from, int to)
+      {
+         float[] r = rounded == null ? null : rounded[n];
+         
+         for (int i = from; i < to; i++)
+         {
+            w[i] += rate * g[i];
+            g[i] = 0.0;
+            
+            if (r != null)
+            {
+               r[i] = (float) w[i];
+            }
+         }
+      } // void update(int n, double[] w, double[] g, double rate, int from, int to)
+      
+   } // static final class Sgd extends Optimizer
+   
+   
+   /**
+    * Gradient descent with a velocity that remembers past steps, v = mu * v + g.
+    * The classic form steps by v; Nesterov's steps by mu * v + g, which looks ahead
+    * along the velocity.
+    */
+   static final class Momentum extends Optimizer
+   {
+      private final double mu;
+      private final boolean nesterov;
+      
+      
+      /**
+       * @param weights  the weights to optimize
+       * @param mu       the fraction of the velocity kept each step
+       * @param nesterov whether to use Nesterov's form
+       */
+      Momentum(double[][] weights, double mu, boolean nesterov)
+      {
+         super(nesterov ? "nesterov" : "momentum", 1, weights);
+         this.mu = mu;
+         this.nesterov = nesterov;
+      }
+      
+      
+      @Override
+      void update(int n, double[] w, double[] g, double rate, int from, int to)
+      {
+         double[] v = state[0][n];
+         float[] r = rounded == null ? null : rounded[n];
+         
+         for (int i = from; i < to; i++)
+         {
+            v[i] = mu * v[i] + g[i];
+            w[i] += rate * (nesterov ? mu * v[i] + g[i] : v[i]);
+            g[i] = 0.0;
+            
+            if (r != null)
+            {
+               r[i] = (float) w[i];
+            }
+         }
+      } // void update(int n, double[] w, double[] g, double rate, int from, int to)
+      
+   } // static final class Momentum extends Optimizer
+   
+   
+   /**
+    * Scales each step by the root of a running mean of squared gradients, so every
+    * weight moves at about the same speed whatever the size of its gradients.
+    */
+   static final class RmsProp extends Optimizer
+   {
+      private final double rho;
+      private final double epsilon;
+      
+      
+      /**
+       * @param weights the weights to optimize
+       * @param rho     the fraction of the mean kept each step
+       * @param epsilon added to the root to keep it away from 0
+       */
+      RmsProp(double[][] weights, double rho, double epsilon)
+      {
+         super("rmsprop", 1, weights);
+         this.rho = rho;
+         this.epsilon = epsilon;
+      }
+      
+      
+      @Override
+      void update(int n, double[] w, double[] g, double rate, int from, int to)
+      {
+         double[] s = state[0][n];
+         float[] r = rounded == null ? null : rounded[n];
+         
+         for (int i = from; i < to; i++)
+         {
+            s[i] = rho * s[i] + (1.0 - rho) * g[i] * g[i];
+            w[i] += rate * g[i] / (Math.sqrt(s[i]) + epsilon);
+            g[i] = 0.0;
+            
+            if (r != null)
+            {
+               r[i] = (float) w[i];
+            }
+         }
+      } // void update(int n, double[] w, double[] g, double rate, int from, int to)
+      
+   } // static final class RmsProp extends Optimizer
+   
+   
+   /**
+    * Adam, which keeps running means of the gradients and of their squares, corrects
+    * both for starting at 0, and steps by the first over the root of the second.
+    */
+   static final class Adam extends Optimizer
+   {
+      private final double beta1;
+      private final double beta2;
+      private final double epsilon;
+      
+      
+      /**
+       * @param weights the weights to optimize
+       * @param beta1   the fraction of the mean of the gradients kept each step
+       * @param beta2   the fraction of the mean of their squares kept each step
+       * @param epsilon added to the root to keep it away from 0
+       */
+      Adam(double[][] weights, double beta1, double beta2, double epsilon)
+      {
+         super("adam", 2, weights);
+         this.beta1 = beta1;
+         this.beta2 = beta2;
+         this.epsilon = epsilon;
+      }
+      
+      
+      @Override
+      void update(int n, double[] w, double[] g, double rate, int from, int to)
+      {
+         double[] m = state[0][n];
+         double[] v = state[1][n];
+         double c1 = 1.0 - Math.pow(beta1, steps);
+         double c2 = 1.0 - Math.pow(beta2, steps);
+         float[] r = rounded == null ? null : rounded[n];
+         
+         for (int i = from; i < to; i++)
+         {
+            m[i] = beta1 * m[i] + (1.0 - beta1) * g[i];
+            v[i] = beta2 * v[i] + (1.0 - beta2) * g[i] * g[i];
+            w[i] += rate * (m[i] / c1) / (Math.sqrt(v[i] / c2) + epsilon);
+            g[i] = 0.0;
+            
+            if (r != null)
+            {
+               r[i] = (float) w[i];
+            }
+         }
+      } // void update(int n, double[] w, double[] g, double rate, int from, int to)
+      
+   } // static final class Adam extends Optimizer
+   
+   
+   /**
+    * An activation function of a layer. Each call runs a whole array, so the loops
+    * over nodes stay inside one kernel instead of calling through the interface for
+    * every value. The derivative is taken from the activations the forward pass
+    * already computed, never from the sums that went into them.
+    */
+   interface Activation
+   {
+      /**
+       * Runs rows of sums through the function in place.
+       * 
+       * @param x    the sums, rows rows of cols values from index 0, replaced by their activations
+       * @param rows the number of rows
+       * @param cols the number of values in each row
+       */
+      void apply(double[] x, int rows, int cols);
+      
+      
+      /**
+       * Multiplies deltas by the derivative of the function at its activations. Functions
+       * that mix a row, like softmax, treat the n values as one row.
+       * 
+       * @param a      the activations
+       * @param delta  the deltas, at the same indices as their activations
+       * @param offset the index of the first value
+       * @param n      the number of values
+       */
+      void derivative(double[] a, double[] delta, int offset, int n);
+      
+      
+      /**
+       * Runs rows of single-precision sums through the function in place, for the
+       * float32 passes.
+       * 
+       * @param x    the sums, rows rows of cols values from index 0, replaced by their activations
+       * @param rows the number of rows
+       * @param cols the number of values in each row
+       */
+      void apply(float[] x, int rows, int cols);
+      
+      
+      /**
+       * Multiplies single-precision deltas by the derivative of the function at its
+       * activations, for the float32 passes.
+       * 
+       * @param a      the activations
+       * @param delta  the deltas, at the same indices as their activations
+       * @param offset the index of the first value
+       * @param n      the number of values
+       */
+      void derivative(float[] a, float[] delta, int offset, int n);
+      
+      
+      /**
+       * @return the name of the function, as given in the configuration
+       */
+      String name();
+      
+   } // interface Activation
+   
+   
+   /**
+    * Makes the activation function with the given name.
+    * 
+    * @param name        sigmoid, tanh, relu, leakyRelu or softmax
+    * @param fastSigmoid whether the sigmoid uses tableSigmoid()
+    * @return the function
+    */
+   public static Activation activation(String name, boolean fastSigmoid)
+   {
+      switch (name)
+      {
+         case "sigmoid":
+            return new Sigmoid(fastSigmoid);
+         case "tanh":
+            return new Tanh();
+         case "relu":
+            return new Relu("relu", 0.0);
+         case "leakyRelu":
+            return new Relu("leakyRelu", 0.01);
+         case "softmax":
+            return new Softmax();
+         default:
+            throw new IllegalArgumentException("unknown activation function: " + name);
+      }
+   } // public static Activation activation(String name, boolean fastSigmoid)
+   
+   
+   /**
+    * The logistic sigmoid, 1 / (1 + e^-x), exactly or from a table.
+    */
+   static final class Sigmoid implements Activation
+   {
+      private final boolean table;
+      
+      
+      /**
+       * @param table whether to approximate the sigmoid with tableSigmoid()
+       */
+      Sigmoid(boolean table)
+      {
+         this.table = table;
+      }
+      
+      
+      @Override
+      public void apply(double[] x, int rows, int cols)
+      {
+         if (table)
+         {
+            for (int i = 0; i < rows * cols; i++)
+            {
+               x[i] = tableSigmoid(x[i]);
+            }
+         }
+         else
+         {
+            for (int i = 0; i < rows * cols; i++)
+            {
+               x[i] = 1.0 / (1.0 + Math.exp(-x[i]));
+            }
+         }
+      } // public void apply(double[] x, int rows, int cols)
+      
+      
+      @Override
+      public void derivative(double[] a, double[] delta, int offset, int n)
+      {
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] *= a[i] * (1.0 - a[i]);
+         }
+      }
+      
+      
+      @Override
+      public void apply(float[] x, int rows, int cols)
+      {
+         for (int i = 0; i < rows * cols; i++)
+         {
+            x[i] = (float) (table ? tableSigmoid(x[i]) : 1.0 / (1.0 + Math.exp(-x[i])));
+         }
+      }
+      
+      
+      @Override
+      public void derivative(float[] a, float[] delta, int offset, int n)
+      {
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] *= a[i] * (1.0f - a[i]);
+         }
+      }
+      
+      
+      @Override
+      public String name()
+      {
+         return table ? "sigmoid (table)" : "sigmoid";
+      }
+      
+   } // static final class Sigmoid implements Activation
+   
+   
+   /**
+    * The hyperbolic tangent, which saturates like the sigmoid but is centered on 0.
+    */
+   static final class Tanh implements Activation
+   {
+      @Override
+      public void apply(double[] x, int rows, int cols)
+      {
+         for (int i = 0; i < rows * cols; i++)
+         {
+            x[i] = Math.tanh(x[i]);
+         }
+      }
+      
+      
+      @Override
+      public void derivative(double[] a, double[] delta, int offset, int n)
+      {
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] *= 1.0 - a[i] * a[i];
+         }
+      }
+      
+      
+      @Override
+      public void apply(float[] x, int rows, int cols)
+      {
+         for (int i = 0; i < rows * cols; i++)
+         {
+            x[i] = (float) Math.tanh(x[i]);
+         }
+      }
+      
+      
+      @Override
+      public void derivative(float[] a, float[] delta, int offset, int n)
+      {
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] *= 1.0f - a[i] * a[i];
+         }
+      }
+      
+      
+      @Override
+      public String name()
+      {
+         return "tanh";
+      }
+      
+   } // static final class Tanh implements Activation
+   
+   
+   /**
+    * The rectifier, x above 0 and slope times x below, so it never saturates for
+    * positive sums. A slope of 0 is the plain rectifier, a small slope the leaky one.
+    */
+   static final class Relu implements Activation
+   {
+      private final String name;
+      private final double slope;
+      private final float slope32;
+      
+      
+      /**
+       * @param name  the name of the function
+       * @param slope the slope below 0
+       */
+      Relu(String name, double slope)
+      {
+         this.name = name;
+         this.slope = slope;
+         slope32 = (float) slope;
+      }
+      
+      
+      @Override
+      public void apply(double[] x, int rows, int cols)
+      {
+         for (int i = 0; i < rows * cols; i++)
+         {
+            x[i] = x[i] > 0.0 ? x[i] : slope * x[i];
+         }
+      }
+      
+      
+      @Override
+      public void derivative(double[] a, double[] delta, int offset, int n)
+      {
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] = a[i] > 0.0 ? delta[i] : slope * delta[i];
+         }
+      }
+      
+      
+      @Override
+      public void apply(float[] x, int rows, int cols)
+      {
+         for (int i = 0; i < rows * cols; i++)
+         {
+            x[i] = x[i] > 0.0f ? x[i] : slope32 * x[i];
+         }
+      }
+      
+      
+      @Override
+      public void derivative(float[] a, float[] delta, int offset, int n)
+      {
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] = a[i] > 0.0f ? delta[i] : slope32 * delta[i];
+         }
+      }
+      
+      
+      @Override
+      public String name()
+      {
+         return name;
+      }
+      
+   } // static final class Relu implements Activation
+   
+   
+   /**
+    * Softmax, which turns each row into probabilities that sum to 1. It is only
+    * allowed on the output layer, where the row is one training set.
+    */
+   static final class Softmax implements Activation
+   {
+      @Override
+      public void apply(double[] x, int rows, int cols)
+      {
+         for (int r = 0; r < rows; r++)
+         {
+            int start = r * cols;
+            double max = Double.NEGATIVE_INFINITY;
+            
+            for (int i = start; i < start + cols; i++)
+            {
+               max = Math.max(max, x[i]);
+            }
+            
+            double sum = 0.0;
+            
+            for (int i = start; i < start + cols; i++)
+            {
+               x[i] = Math.exp(x[i] - max);
+               sum += x[i];
+            }
+            
+            for (int i = start; i < start + cols; i++)
+            {
+               x[i] /= sum;
+            }
+         } // for (int r = 0; r < rows; r++)
+         
+      } // public void apply(double[] x, int rows, int cols)
+      
+      
+      /**
+       * Multiplies deltas by the Jacobian of softmax, a_i * (delta_i - sum of delta_j * a_j).
+       */
+      @Override
+      public void derivative(double[] a, double[] delta, int offset, int n)
+      {
+         double dot = 0.0;
+         
+         for (int i = offset; i < offset + n; i++)
+         {
+            dot += delta[i] * a[i];
+         }
+         
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] = a[i] * (delta[i] - dot);
+         }
+      } // public void derivative(double[] a, double[] delta, int offset, int n)
+      
+      
+      /**
+       * Runs single-precision rows through softmax, summing each row in double.
+       */
+      @Override
+      public void apply(float[] x, int rows, int cols)
+      {
+         for (int r = 0; r < rows; r++)
+         {
+            int start = r * cols;
+            float max = Float.NEGATIVE_INFINITY;
+            
+            for (int i = start; i < start + cols; i++)
+            {
+               max = Math.max(max, x[i]);
+            }
+            
+            double sum = 0.0;
+            
+            for (int i = start; i < start + cols; i++)
+            {
+               x[i] = (float) Math.exp(x[i] - max);
+               sum += x[i];
+            }
+            
+            for (int i = start; i < start + cols; i++)
+            {
+               x[i] = (float) (x[i] / sum);
+            }
+         } // for (int r = 0; r < rows; r++)
+         
+      } // public void apply(float[] x, int rows, int cols)
+      
+      
+      @Override
+      public void derivative(float[] a, float[] delta, int offset, int n)
+      {
+         float dot = 0.0f;
+         
+         for (int i = offset; i < offset + n; i++)
+         {
+            dot += delta[i] * a[i];
+         }
+         
+         for (int i = offset; i < offset + n; i++)
+         {
+            delta[i] = a[i] * (delta[i] - dot);
+         }
+      } // public void derivative(float[] a, float[] delta, int offset, int n)
+      
+      
+      @Override
+      public String name()
+      {
+         return "softmax";
+      }
+      
+   } // static final class Softmax implements Activation
+   
+   
+   /**
+    * A loss function, which measures how far the outputs are from the expected ones
+    * and sets the deltas of the output layer.
+    */
+   interface Loss
+   {
+      /**
+       * @param expected  the expected value of one output
+       * @param calculated the calculated value of the output
+       * @return the error of the output
+       */
+      double error(double expected, double calculated);
+      
+      
+      /**
+       * Sets the deltas of the outputs of one training set, the negative gradient of
+       * the loss with respect to the sums of the output layer, and adds their errors
+       * to a running total in output order.
+       * 
+       * @param f      the activation function of the output layer
+       * @param a      the outputs
+       * @param t      the expected outputs
+       * @param tOff   the index of the first expected output
+       * @param delta  receives the deltas, at the same indices as the outputs
+       * @param offset the index of the first output
+       * @param n      the number of outputs
+       * @param error  the running total of the error
+       * @return the running total with the errors of the outputs added
+       */
+      double outputDeltas(Activation f, double[] a, double[] t, int tOff, double[] delta, int offset, int n, double error);
+      
+      
+      /**
+       * Sets the single-precision deltas of the outputs of one training set, for the
+       * float32 passes, and adds their errors to a running total in double.
+       * 
+       * @param f      the activation function of the output layer
+       * @param a      the outputs
+       * @param t      the expected outputs
+       * @param tOff   the index of the first expected output
+       * @param delta  receives the deltas, at the same indices as the outputs
+       * @param offset the index of the first output
+       * @param n      the number of outputs
+       * @param error  the running total of the error
+       * @return the running total with the errors of the outputs added
+       */
+      double outputDeltas(Activation f, float[] a, double[] t, int tOff, float[] delta, int offset, int n, double error);
+      
+      
+      /**
+       * @return the name of the loss, as given in the configuration
+       */
+      String name();
+      
+   } // interface Loss
+   
+   
+   /**
+    * Half the squared error, which works with any output activation.
+    */
+   static final class SquaredError implements Loss
+   {
+      @Override
+      public double error(double expected, double calculated)
+      {
+         double diff = expected - calculated;
+         return 0.5 * diff * diff;
+      }
+      
+      
+      @Override
+      public double outputDeltas(Activation f, double[] a, double[] t, int tOff, double[] delta, int offset, int n, double error)
+      {
+         for (int i = 0; i < n; i++)
+         {
+            delta[offset + i] = t[tOff + i] - a[offset + i];
+            error += error(t[tOff + i], a[offset + i]);
+         }
+         
+         f.derivative(a, delta, offset, n);
+         return error;
+      } // public double outputDeltas(...)
+      
+      
+      @Override
+      public double outputDeltas(Activation f, float[] a, double[] t, int tOff, float[] delta, int offset, int n, double error)
+      {
+         for (int i = 0; i < n; i++)
+         {
+            delta[offset + i] = (float) (t[tOff + i] - a[offset + i]);
+            error += error(t[tOff + i], a[offset + i]);
+         }
+         
+         f.derivative(a, delta, offset, n);
+         return error;
+      } // public double outputDeltas(...)
+      
+      
+      @Override
+      public String name()
+      {
+         return "mse";
+      }
+      
+   } // static final class SquaredError implements Loss
+   
+   
+   /**
+    * Cross-entropy, for sigmoid outputs as independent probabilities or softmax
+    * outputs as one distribution. With either, the derivative of the activation
+    * cancels against the loss and the delta is just the expected minus the calculated
+    * output, so the gradient does not vanish when the outputs saturate.
+    */
+   static final class CrossEntropy implements Loss
+   {
+      private static final double FLOOR = 1e-15;
+      private final boolean categorical;
+      
+      
+      /**
+       * @param categorical whether the outputs are one softmax distribution rather
+       *                    than independent sigmoid probabilities
+       */
+      CrossEntropy(boolean categorical)
+      {
+         this.categorical = categorical;
+      }
+      
+      
+      @Override
+      public double error(double expected, double calculated)
+      {
+         double p = Math.min(Math.max(calculated, FLOOR), 1.0 - FLOOR);
+         double error = -expected * Math.log(p);
+         return categorical ? error : error - (1.0 - expected) * Math.log(1.0 - p);
+      }
+      
+      
+      @Override
+      public double outputDeltas(Activation f, double[] a, double[] t, int tOff, double[] delta, int offset, int n, double error)
+      {
+         for (int i = 0; i < n; i++)
+         {
+            delta[offset + i] = t[tOff + i] - a[offset + i];
+            error += error(t[tOff + i], a[offset + i]);
+         }
+         
+         return error;
+      } // public double outputDeltas(...)
+      
+      
+      @Override
+      public double outputDeltas(Activation f, float[] a, double[] t, int tOff, float[] delta, int offset, int n, double error)
+      {
+         for (int i = 0; i < n; i++)
+         {
+            delta[offset + i] = (float) (t[tOff + i] - a[offset + i]);
+            error += error(t[tOff + i], a[offset + i]);
+         }
+         
+         return error;
+      } // public double outputDeltas(...)
+      
+      
+      @Override
+      public String name()
+      {
+         return "crossEntropy";
+      }
+      
+   } // static final class CrossEntropy implements Loss
+   
+   
+   /**
+    * Supplies the inner loops of the dense kernels. Implementations may reorder the
+    * additions of a sum, so sums of n products may differ between backends by about
+    * n * 2^-52 times the sum of the magnitudes of the products. The other results
+    * must be identical.
+    */
+   interface Backend
+   {
+      
+      /**
+       * Adds a multiple of one run of values to another.
+       * 
+       * @param a    the multiple
+       * @param x    the values to add
+       * @param xOff the index of the first value to add
+       * @param y    the values added to
+       * @param yOff the index of the first value added to
+       * @param n    the number of values
+       */
+      void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n);
+      
+      
+      /**
+       * Sums the products of two runs of values.
+       * 
+       * @param x    the first values
+       * @param xOff the index of the first of the first values
+       * @param y    the second values
+       * @param yOff the index of the first of the second values
+       * @param n    the number of values
+       * @return the sum of the products
+       */
+      double dot(double[] x, int xOff, double[] y, int yOff, int n);
+      
+      
+      /**
+       * Sums the products of four consecutive rows of values with one run of values.
+       * 
+       * @param x    the rows, each n values long
+       * @param xOff the index of the first value of the first row
+       * @param y    the run of values
+       * @param yOff the index of the first of the run of values
+       * @param n    the number of values in each row
+       * @param out  receives the four sums
+       * @param oOff the index the first sum is stored at
+       */
+      void dot4(double[] x, int xOff, double[] y, int yOff, int n, double[] out, int oOff);
+      
+      
+      /**
+       * Adds a multiple of one run of single-precision values to another.
+       * 
+       * @param a    the multiple
+       * @param x    the values to add
+       * @param xOff the index of the first value to add
+       * @param y    the values added to
+       * @param yOff the index of the first value added to
+       * @param n    the number of values
+       */
+      void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n);
+      
+      
+      /**
+       * Sums the products of two runs of single-precision values.
+       * 
+       * @param x    the first values
+       * @param xOff the index of the first of the first values
+       * @param y    the second values
+       * @param yOff the index of the first of the second values
+       * @param n    the number of values
+       * @return the sum of the products
+       */
+      float dot(float[] x, int xOff, float[] y, int yOff, int n);
+      
+      
+      /**
+       * Sums the products of four consecutive rows of single-precision values with one
+       * run of values.
+       * 
+       * @param x    the rows, each n values long
+       * @param xOff the index of the first value of the first row
+       * @param y    the run of values
+       * @param yOff the index of the first of the run of values
+       * @param n    the number of values in each row
+       * @param out  receives the four sums
+       * @param oOff the index the first sum is stored at
+       */
+      void dot4(float[] x, int xOff, float[] y, int yOff, int n, float[] out, int oOff);
+      
+      
+      /**
+       * Sums the products of two runs of int8 codes. The sum is exact, so every
+       * backend gives the same result.
+       * 
+       * @param x    the first codes
+       * @param xOff the index of the first of the first codes
+       * @param y    the second codes
+       * @param yOff the index of the first of the second codes
+       * @param n    the number of codes
+       * @return the sum of the products
+       */
+      int dot(byte[] x, int xOff, byte[] y, int yOff, int n);
+      
+      
+      /**
+       * Describes the backend.
+       * 
+       * @return the name of the backend
+       */
+      String name();
+      
+   } // interface Backend
+   
+   
+   /**
+    * Plain loops that add every sum in order. The loop of axpy is left for HotSpot to
+    * vectorize.
+    */
+   static class ScalarBackend implements Backend
+   {
+      
+      /**
+       * Adds a multiple of one run of values to another.
+       */
+      public void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n)
+      {
+         for (int i = 0; i < n; i++)
+         {
+            y[yOff + i] += a * x[xOff + i];
+         }
+      }
+      
+      
+      /**
+       * Sums the products of two runs of values, in order.
+       */
+      public double dot(double[] x, int xOff, double[] y, int yOff, int n)
+      {
+         double sum = 0.0;
+         
+         for (int i = 0; i < n; i++)
+         {
+            sum += y[yOff + i] * x[xOff + i];
+         }
+         
+         return sum;
+      }
+      
+      
+      /**
+       * Sums the products of four rows with one run of values. The four sums are
+       * independent, so they overlap in the processor, but each one adds its terms in
+       * the same order as dot().
+       */
+      public void dot4(double[] x, int xOff, double[] y, int yOff, int n, double[] out, int oOff)
+      {
+         double sum0 = 0.0;
+         double sum1 = 0.0;
+         double sum2 = 0.0;
+         double sum3 = 0.0;
+         
+         for (int i = 0; i < n; i++)
+         {
+            double v = y[yOff + i];
+            sum0 += v * x[xOff + i];
+            sum1 += v * x[xOff + n + i];
+            sum2 += v * x[xOff + 2 * n + i];
+            sum3 += v * x[xOff + 3 * n + i];
+         }
+         
+         out[oOff] = sum0;
+         out[oOff + 1] = sum1;
+         out[oOff + 2] = sum2;
+         out[oOff + 3] = sum3;
+      }
+      
+      
+      /**
+       * Adds a multiple of one run of single-precision values to another.
+       */
+      public void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n)
+      {
+         for (int i = 0; i < n; i++)
+         {
+            y[yOff + i] += a * x[xOff + i];
+         }
+      }
+      
+      
+      /**
+       * Sums the products of two runs of single-precision values, in order.
+       */
+      public float dot(float[] x, int xOff, float[] y, int yOff, int n)
+      {
+         float sum = 0.0f;
+         
+         for (int i = 0; i < n; i++)
+         {
+            sum += y[yOff + i] * x[xOff + i];
+         }
+         
+         return sum;
+      }
+      
+      
+      /**
+       * Sums the products of four single-precision rows with one run of values.
+       */
+      public void dot4(float[] x, int xOff, float[] y, int yOff, int n, float[] out, int oOff)
+      {
+         float sum0 = 0.0f;
+         float sum1 = 0.0f;
+         float sum2 = 0.0f;
+         float sum3 = 0.0f;
+         
+         for (int i = 0; i < n; i++)
+         {
+            float v = y[yOff + i];
+            sum0 += v * x[xOff + i];
+            sum1 += v * x[xOff + n + i];
+            sum2 += v * x[xOff + 2 * n + i];
+            sum3 += v * x[xOff + 3 * n + i];
+         }
+         
+         out[oOff] = sum0;
+         out[oOff + 1] = sum1;
+         out[oOff + 2] = sum2;
+         out[oOff + 3] = sum3;
+      }
+      
+      
+      /**
+       * Sums the products of two runs of int8 codes.
+       */
+      public int dot(byte[] x, int xOff, byte[] y, int yOff, int n)
+      {
+         int sum = 0;
+         
+         for (int i = 0; i < n; i++)
+         {
+            sum += y[yOff + i] * x[xOff + i];
+         }
+         
+         return sum;
+      }
+      
+      
+      /**
+       * Names the backend.
+       */
+      public String name()
+      {
+         return "scalar";
+      }
+      
+   } // static class ScalarBackend implements Backend
+   
+   
+   /**
+    * Calls the kernels of VectorBackend through method handles. VectorBackend is
+    * compiled from its own file, which cannot refer to this one, so it does not
+    * implement Backend itself; its static methods are looked up by name when this
+    * class is first used. The handles are static final, so HotSpot treats them as
+    * constants and inlines the kernels as if they were called directly. If the class
+    * or a method is missing, initializing this class fails with a LinkageError.
+    */
+   static final class VectorKernels implements Backend
+   {
+      private static final MethodHandle AXPY = kernel("axpy", void.class, double.class, double[].class, int.class, 
+                                                       double[].class, int.class, int.class);
+      private static final MethodHandle DOT = kernel("dot", double.class, double[].class, int.class, double[].class, 
+                                                      int.class, int.class);
+      private static final MethodHandle DOT4 = kernel("dot4", void.class, double[].class, int.class, double[].class, 
+                                                       int.class, int.class, double[].class, int.class);
+      private static final MethodHandle AXPY32 = kernel("axpy", void.class, float.class, float[].class, int.class, 
+                                                         float[].class, int.class, int.class);
+      private static final MethodHandle DOT32 = kernel("dot", float.class, float[].class, int.class, float[].class, 
+                                                        int.class, int.class);
+      private static final MethodHandle DOT4_32 = kernel("dot4", void.class, float[].class, int.class, float[].class, 
+                                                          int.class, int.class, float[].class, int.class);
+      private static final MethodHandle DOT8 = kernel("dot", int.class, byte[].class, int.class, byte[].class, 
+                                                       int.class, int.class);
+      private static final MethodHandle NAME = kernel("name", String.class);
+      
+      
+      /**
+       * Looks up one static method of VectorBackend.
+       * 
+       * @param name   the name of the method
+       * @param result the type it returns
+       * @param params the types of its parameters
+       * @return the method handle
+       */
+      private static MethodHandle kernel(String name, Class<?> result, Class<?>... params)
+      {
+         try
+         {
+            return MethodHandles.lookup().findStatic(Class.forName("perceptron.VectorBackend"), name, 
+                                                     MethodType.methodType(result, params));
+         }
+         catch (ReflectiveOperationException e)
+         {
+            throw new NoClassDefFoundError("VectorBackend." + name + ": " + e);
+         }
+      } // private static MethodHandle kernel(String name, Class<?> result, Class<?>... params)
+      
+      
+      /**
+       * Passes on what a kernel threw. The kernels throw nothing checked, so anything
+       * else is wrapped.
+       * 
+       * @param e what the kernel threw
+       * @return the exception to throw
+       */
+      private static RuntimeException unchecked(Throwable e)
+      {
+         if (e instanceof Error)
+         {
+            throw (Error) e;
+         }
+         
+         return e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+      } // private static RuntimeException unchecked(Throwable e)
+      
+      
+      @Override
+      public void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n)
+      {
+         try
+         {
+            AXPY.invokeExact(a, x, xOff, y, yOff, n);
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+      
+      @Override
+      public double dot(double[] x, int xOff, double[] y, int yOff, int n)
+      {
+         try
+         {
+            return (double) DOT.invokeExact(x, xOff, y, yOff, n);
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+      
+      @Override
+      public void dot4(double[] x, int xOff, double[] y, int yOff, int n, double[] out, int oOff)
+      {
+         try
+         {
+            DOT4.invokeExact(x, xOff, y, yOff, n, out, oOff);
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+      
+      @Override
+      public void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n)
+      {
+         try
+         {
+            AXPY32.invokeExact(a, x, xOff, y, yOff, n);
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+      
+      @Override
+      public float dot(float[] x, int xOff, float[] y, int yOff, int n)
+      {
+         try
+         {
+            return (float) DOT32.invokeExact(x, xOff, y, yOff, n);
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+      
+      @Override
+      public void dot4(float[] x, int xOff, float[] y, int yOff, int n, float[] out, int oOff)
+      {
+         try
+         {
+            DOT4_32.invokeExact(x, xOff, y, yOff, n, out, oOff);
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+      
+      @Override
+      public int dot(byte[] x, int xOff, byte[] y, int yOff, int n)
+      {
+         try
+         {
+            return (int) DOT8.invokeExact(x, xOff, y, yOff, n);
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+      
+      @Override
+      public String name()
+      {
+         try
+         {
+            return (String) NAME.invokeExact();
+         }
+         catch (Throwable e)
+         {
+            throw unchecked(e);
+         }
+      }
+      
+   } // static final class VectorKernels implements Backend
+   
+} // public class Perceptron3
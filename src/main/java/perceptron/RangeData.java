@@ -0,0 +1,104 @@
+package perceptron;
+
+/**
+ * A run of consecutive training sets of other training data, used to hold some of
+ * them out for validation. A cursor reads past the training sets outside the run,
+ * so streamed data still reads them but they are never used.
+ */
+class RangeData implements TrainingData
+{
+   private final TrainingData data;
+   private final int width;
+   private final int first;
+   private final int size;
+   
+   
+   /**
+    * @param data  the training data
+    * @param width the number of inputs and outputs of each training set
+    * @param first the index of the first training set of the run
+    * @param size  the number of training sets in the run
+    */
+   RangeData(TrainingData data, int width, int first, int size)
+   {
+      this.data = data;
+      this.width = width;
+      this.first = first;
+      this.size = size;
+   }
+   
+   
+   @Override
+   public int size()
+   {
+      return size;
+   }
+   
+   
+   @Override
+   public Cursor cursor()
+   {
+      Cursor cursor = data.cursor();
+      
+      return new Cursor()
+      {
+         private final double[] buffer = new double[Perceptron3.SWEEP_ROWS * width];
+         private int position = -1;
+         
+         
+         @Override
+         public void next(double[] rows, int count)
+         {
+            int copied = 0;
+            
+            while (copied < count)
+            {
+               if (position < 0 || position == size)
+               {
+                  skip(position < 0 ? first : data.size() - size);
+                  position = 0;
+               }
+               
+               int n = Math.min(count - copied, size - position);
+               
+               if (n == count)
+               {
+                  cursor.next(rows, n);
+               }
+               else
+               {
+                  n = Math.min(n, Perceptron3.SWEEP_ROWS);
+                  cursor.next(buffer, n);
+                  System.arraycopy(buffer, 0, rows, copied * width, n * width);
+               }
+               
+               copied += n;
+               position += n;
+            } // while (copied < count)
+            
+         } // public void next(double[] rows, int count)
+         
+         
+         /**
+          * Reads past training sets of the underlying data.
+          * 
+          * @param count the number of training sets to read past
+          */
+         private void skip(int count)
+         {
+            for (int s = 0; s < count; s += Perceptron3.SWEEP_ROWS)
+            {
+               cursor.next(buffer, Math.min(Perceptron3.SWEEP_ROWS, count - s));
+            }
+         } // private void skip(int count)
+         
+         
+         @Override
+         public void close()
+         {
+            cursor.close();
+         }
+      };
+   } // public Cursor cursor()
+   
+} // class RangeData implements TrainingData
@@ -0,0 +1,29 @@
+package perceptron;
+
+import java.io.IOException;
+
+/**
+ * Reads training sets from a data file in order, once through.
+ */
+interface RowReader
+{
+   /**
+    * Reads up to count training sets into rows.
+    * 
+    * @param rows  the array to fill
+    * @param first the training set in rows to fill first
+    * @param count the most training sets to read
+    * @return the number of training sets read, less than count at the end of the file
+    * @throws IOException if the file cannot be read
+    */
+   int read(double[] rows, int first, int count) throws IOException;
+   
+   
+   /**
+    * Closes the file.
+    * 
+    * @throws IOException if the file cannot be closed
+    */
+   void close() throws IOException;
+   
+} // interface RowReader
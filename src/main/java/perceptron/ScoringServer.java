@@ -0,0 +1,482 @@
+package perceptron;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scores inputs over HTTP on the loopback address. Each request is one set of
+ * inputs; requests that arrive together are gathered by a batching thread into
+ * a micro-batch of up to maxBatch sets, waiting at most maxWait after the first
+ * one for more, and run through the predictor at once.
+ * 
+ * The weights being served are a ModelVersion held in an AtomicReference. The
+ * batching thread reads it once per batch without locking, and publish() swaps in
+ * a new version whole, so a batch never mixes two versions and no request is
+ * dropped while the weights change.
+ */
+class ScoringServer implements Runnable
+{
+   private static final int SERVER_QUEUE = 4096;
+   private static final int LATENCY_SAMPLES = 1 << 16;
+   private static final int SERVER_TIMEOUT_MILLIS = 30000;
+   private static final int ROLLBACK_VERSIONS = 8;
+
+   private final AtomicReference<ModelVersion> model;
+   private final AtomicInteger versions = new AtomicInteger(1);
+   private final int maxBatch;
+   private final long maxWait;
+   private final ArrayBlockingQueue<Request> queue = new ArrayBlockingQueue<>(SERVER_QUEUE);
+   private final long[] latencies = new long[LATENCY_SAMPLES];
+   private final long started = System.nanoTime();
+   private final HttpServer server;
+   private final Thread batcher;
+   private long requests;
+   private long batches;
+   
+   
+   /**
+    * One version of the weights being served, which never changes once published.
+    * It keeps the chain of versions it replaced, cut off after depth of them so
+    * that old networks can be freed, so that it can be rolled back that far.
+    */
+   static final class ModelVersion
+   {
+      final int version;
+      final Perceptron3.Predictor predictor;
+      final String source;
+      final int iteration;
+      final ModelVersion previous;
+      
+      
+      /**
+       * @param version   the number of the version, counting up from 1
+       * @param predictor the network
+       * @param source    the file the weights were loaded from
+       * @param iteration the iteration the weights were saved at
+       * @param previous  the version this one replaces, or null
+       * @param depth     the most versions to keep behind this one
+       */
+      ModelVersion(int version, Perceptron3.Predictor predictor, String source, int iteration, ModelVersion previous, int depth)
+      {
+         this.version = version;
+         this.predictor = predictor;
+         this.source = source;
+         this.iteration = iteration;
+         this.previous = previous == null || depth == 0 ? null 
+                         : new ModelVersion(previous.version, previous.predictor, previous.source, previous.iteration,
+                                            previous.previous, depth - 1);
+      }
+   } // static final class ModelVersion
+   
+   
+   /**
+    * One set of inputs waiting to be scored.
+    */
+   static final class Request
+   {
+      final double[] in;
+      final double[] out;
+      final CountDownLatch done = new CountDownLatch(1);
+      int version;
+      Throwable failure;
+      
+      
+      /**
+       * @param in      the inputs
+       * @param outputs the number of outputs
+       */
+      Request(double[] in, int outputs)
+      {
+         this.in = in;
+         out = new double[outputs];
+      }
+   } // static final class Request
+   
+   
+   /**
+    * Starts the batching thread and the server.
+    * 
+    * @param predictor     the network to score with first
+    * @param source        where the weights of the network came from
+    * @param port          the port to listen on, or 0 for any free port
+    * @param maxBatch      the most requests to score in one batch
+    * @param maxWaitMicros the longest a request waits for others to batch with, in microseconds
+    * @throws IOException if the server cannot listen on the port
+    */
+   ScoringServer(Perceptron3.Predictor predictor, String source, int port, int maxBatch, long maxWaitMicros) throws IOException
+   {
+      model = new AtomicReference<>(new ModelVersion(1, predictor, source, 0, null, 0));
+      this.maxBatch = maxBatch;
+      maxWait = maxWaitMicros * 1000;
+      
+      batcher = new Thread(this, "micro-batcher");
+      batcher.setDaemon(true);
+      batcher.start();
+      
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/predict", this::predict);
+      server.createContext("/stats", exchange -> respond(exchange, 200, stats()));
+      server.createContext("/model", exchange -> respond(exchange, 200, describe(model.get())));
+      server.createContext("/rollback", this::rollback);
+      server.setExecutor(handlerExecutor(Math.max(16, 4 * maxBatch)));
+      server.start();
+   } // ScoringServer(Perceptron3.Predictor predictor, String source, int port, int maxBatch, long maxWaitMicros)
+   
+   
+   /**
+    * Runs handlers on virtual threads where the JDK has them, since each handler
+    * blocks while its request waits in a batch, or else on a fixed pool.
+    * 
+    * @param threads the size of the pool if virtual threads are unavailable
+    * @return the executor
+    */
+   private static ExecutorService handlerExecutor(int threads)
+   {
+      try
+      {
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+      catch (ReflectiveOperationException e)
+      {
+         return Executors.newFixedThreadPool(threads);
+      }
+   } // private static ExecutorService handlerExecutor(int threads)
+   
+   
+   /**
+    * @return the port the server listens on
+    */
+   int port()
+   {
+      return server.getAddress().getPort();
+   }
+   
+   
+   /**
+    * Serves a new version of the weights from the next batch on, under a number
+    * no version has had before, keeping the ones it replaces for rollback.
+    * 
+    * @param predictor the network
+    * @param source    the file the weights were loaded from
+    * @param iteration the iteration the weights were saved at
+    * @return the version published
+    */
+   ModelVersion publish(Perceptron3.Predictor predictor, String source, int iteration)
+   {
+      int version = versions.incrementAndGet();
+      ModelVersion current;
+      ModelVersion next;
+      
+      do
+      {
+         current = model.get();
+         next = new ModelVersion(version, predictor, source, iteration, current, ROLLBACK_VERSIONS);
+      } while (!model.compareAndSet(current, next));
+      
+      return next;
+   } // ModelVersion publish(Perceptron3.Predictor predictor, String source, int iteration)
+   
+   
+   /**
+    * Goes back to the version before the one being served, on a POST.
+    * 
+    * @param exchange the request
+    * @throws IOException if the request cannot be answered
+    */
+   private void rollback(HttpExchange exchange) throws IOException
+   {
+      if (!exchange.getRequestMethod().equals("POST"))
+      {
+         respond(exchange, 405, "POST to roll back\n");
+         return;
+      }
+      
+      ModelVersion current = model.get();
+      
+      if (current.previous == null || !model.compareAndSet(current, current.previous))
+      {
+         respond(exchange, 409, "no version to roll back to, only the last " + ROLLBACK_VERSIONS 
+                                + " versions are kept\n");
+         return;
+      }
+      
+      respond(exchange, 200, describe(current.previous));
+   } // private void rollback(HttpExchange exchange)
+   
+   
+   /**
+    * @param version a version of the weights
+    * @return the version, one name and value per line
+    */
+   private static String describe(ModelVersion version)
+   {
+      return "version " + version.version + "\n"
+           + "source " + version.source + "\n"
+           + "iteration " + version.iteration + "\n"
+           + "previous " + (version.previous == null ? "none" : String.valueOf(version.previous.version)) + "\n";
+   } // private static String describe(ModelVersion version)
+   
+   
+   /**
+    * Scores the inputs in the body of a POST, separated by commas or spaces, and
+    * answers with the outputs separated by spaces.
+    * 
+    * @param exchange the request
+    * @throws IOException if the request cannot be read or answered
+    */
+   private void predict(HttpExchange exchange) throws IOException
+   {
+      long start = System.nanoTime();
+      
+      if (!exchange.getRequestMethod().equals("POST"))
+      {
+         respond(exchange, 405, "POST the inputs to score\n");
+         return;
+      }
+      
+      Perceptron3.Predictor predictor = model.get().predictor;
+      StringTokenizer tokenizer = new StringTokenizer(new String(exchange.getRequestBody().readAllBytes()), ", \t\r\n");
+      
+      if (tokenizer.countTokens() != predictor.inputs())
+      {
+         respond(exchange, 400, "expected " + predictor.inputs() + " inputs, not " + tokenizer.countTokens() + "\n");
+         return;
+      }
+      
+      double[] in = new double[predictor.inputs()];
+      
+      try
+      {
+         for (int i = 0; i < in.length; i++)
+         {
+            in[i] = Double.parseDouble(tokenizer.nextToken());
+         }
+      }
+      catch (NumberFormatException e)
+      {
+         respond(exchange, 400, e.getMessage() + "\n");
+         return;
+      }
+      
+      Request request = new Request(in, predictor.outputs());
+      
+      if (!queue.offer(request))
+      {
+         respond(exchange, 503, "too many requests waiting\n");
+         return;
+      }
+      
+      try
+      {
+         if (!request.done.await(SERVER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+         {
+            respond(exchange, 503, "not scored within " + SERVER_TIMEOUT_MILLIS + " ms\n");
+            return;
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         respond(exchange, 503, "interrupted\n");
+         return;
+      }
+      
+      if (request.failure != null)
+      {
+         respond(exchange, 500, "scoring failed: " + request.failure + "\n");
+         return;
+      }
+      
+      StringBuilder body = new StringBuilder();
+      
+      for (int i = 0; i < request.out.length; i++)
+      {
+         body.append(i == 0 ? "" : " ").append(request.out[i]);
+      }
+      
+      exchange.getResponseHeaders().set("X-Model-Version", String.valueOf(request.version));
+      respond(exchange, 200, body.append('\n').toString());
+      record(System.nanoTime() - start);
+   } // private void predict(HttpExchange exchange)
+   
+   
+   /**
+    * Sends a plain text answer.
+    * 
+    * @param exchange the request
+    * @param status   the HTTP status
+    * @param body     the text of the answer
+    * @throws IOException if the answer cannot be sent
+    */
+   private static void respond(HttpExchange exchange, int status, String body) throws IOException
+   {
+      byte[] bytes = body.getBytes();
+      exchange.getResponseHeaders().set("Content-Type", "text/plain");
+      exchange.sendResponseHeaders(status, bytes.length);
+      
+      try (OutputStream out = exchange.getResponseBody())
+      {
+         out.write(bytes);
+      }
+   } // private static void respond(HttpExchange exchange, int status, String body)
+   
+   
+   /**
+    * Gathers waiting requests into batches and scores them until the thread is
+    * interrupted. A batch is run as soon as it is full or maxWait has passed since
+    * its first request was taken. If scoring a batch throws, its requests are
+    * answered with the failure and the thread goes on to the next batch.
+    */
+   @Override
+   public void run()
+   {
+      int inputs = model.get().predictor.inputs();
+      int outputs = model.get().predictor.outputs();
+      double[] in = new double[maxBatch * inputs];
+      double[] out = new double[maxBatch * outputs];
+      Request[] batch = new Request[maxBatch];
+      
+      try
+      {
+         while (true)
+         {
+            batch[0] = queue.take();
+            int count = 1;
+            long deadline = System.nanoTime() + maxWait;
+            
+            while (count < maxBatch)
+            {
+               Request next = queue.poll();
+               
+               if (next == null)
+               {
+                  long left = deadline - System.nanoTime();
+                  next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+                  
+                  if (next == null)
+                  {
+                     break;
+                  }
+               }
+               
+               batch[count++] = next;
+            } // while (count < maxBatch)
+            
+            ModelVersion current = model.get();
+            Throwable failure = null;
+            
+            try
+            {
+               for (int b = 0; b < count; b++)
+               {
+                  System.arraycopy(batch[b].in, 0, in, b * inputs, inputs);
+               }
+               
+               current.predictor.predictBatch(in, out, count);
+            }
+            catch (Throwable e)
+            {
+               failure = e;
+            }
+            
+            for (int b = 0; b < count; b++)
+            {
+               if (failure == null)
+               {
+                  System.arraycopy(out, b * outputs, batch[b].out, 0, outputs);
+               }
+               
+               batch[b].version = current.version;
+               batch[b].failure = failure;
+               batch[b].done.countDown();
+               batch[b] = null;
+            } // for (int b = 0; b < count; b++)
+            
+            synchronized (this)
+            {
+               batches++;
+            }
+         } // while (true)
+      } // try
+      catch (InterruptedException e)
+      {
+         return;
+      }
+      
+   } // public void run()
+   
+   
+   /**
+    * Records the latency of one answered request, keeping the most recent ones.
+    * 
+    * @param nanos the time from receiving the request to answering it
+    */
+   private synchronized void record(long nanos)
+   {
+      latencies[(int) (requests % LATENCY_SAMPLES)] = nanos;
+      requests++;
+   }
+   
+   
+   /**
+    * Reports the requests and batches so far, the median and 99th percentile
+    * latency of the most recent requests, and the requests answered per second.
+    * 
+    * @return the statistics, one name and value per line
+    */
+   synchronized String stats()
+   {
+      int n = (int) Math.min(requests, LATENCY_SAMPLES);
+      long[] sorted = Arrays.copyOf(latencies, n);
+      Arrays.sort(sorted);
+      double seconds = (System.nanoTime() - started) / 1e9;
+      
+      return "requests " + requests + "\n"
+           + "batches " + batches + "\n"
+           + "meanBatch " + (batches == 0 ? 0.0 : (double) requests / batches) + "\n"
+           + "p50Micros " + percentile(sorted, 0.50) + "\n"
+           + "p99Micros " + percentile(sorted, 0.99) + "\n"
+           + "requestsPerSecond " + requests / seconds + "\n";
+   } // synchronized String stats()
+   
+   
+   /**
+    * @param sorted latencies in nanoseconds, in increasing order
+    * @param p      the fraction of latencies the result should not be exceeded by
+    * @return the latency at the percentile, in microseconds, or 0 without any
+    */
+   private static double percentile(long[] sorted, double p)
+   {
+      if (sorted.length == 0)
+      {
+         return 0.0;
+      }
+      
+      int index = (int) Math.ceil(p * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1000.0;
+   } // private static double percentile(long[] sorted, double p)
+   
+   
+   /**
+    * Stops accepting requests and stops the batching thread.
+    */
+   void close()
+   {
+      server.stop(0);
+      batcher.interrupt();
+   }
+   
+} // class ScoringServer implements Runnable
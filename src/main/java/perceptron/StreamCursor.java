@@ -0,0 +1,163 @@
+package perceptron;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads streamed training sets through a prefetching thread. The thread reads the
+ * file a chunk at a time, over and over, into a few recycled chunks that it hands
+ * over through a queue, so reading and training overlap and nothing is allocated
+ * once the chunks exist.
+ */
+class StreamCursor implements Cursor, Runnable
+{
+   private static final int CHUNK_ROWS = 4096;
+   private static final int PREFETCH_CHUNKS = 3;
+
+   private final StreamedData data;
+   private final ArrayBlockingQueue<double[]> free = new ArrayBlockingQueue<>(PREFETCH_CHUNKS);
+   private final ArrayBlockingQueue<double[]> full = new ArrayBlockingQueue<>(PREFETCH_CHUNKS);
+   private final Thread thread;
+   private volatile IOException failure;
+   private double[] chunk;
+   private int position;
+   
+   
+   /**
+    * Allocates the chunks and starts the prefetching thread.
+    * 
+    * @param data the data file to read
+    */
+   StreamCursor(StreamedData data)
+   {
+      this.data = data;
+      
+      for (int c = 0; c < PREFETCH_CHUNKS; c++)
+      {
+         free.add(new double[CHUNK_ROWS * data.width]);
+      }
+      
+      thread = new Thread(this, "data prefetch");
+      thread.setDaemon(true);
+      thread.start();
+   } // StreamCursor(StreamedData data)
+   
+   
+   /**
+    * Fills chunks from the file until the cursor is closed, starting the file again
+    * whenever it runs out.
+    */
+   @Override
+   public void run()
+   {
+      RowReader reader = null;
+      
+      try
+      {
+         reader = data.open();
+         
+         while (true)
+         {
+            double[] rows = free.take();
+            int filled = 0;
+            
+            while (filled < CHUNK_ROWS)
+            {
+               int read = reader.read(rows, filled, CHUNK_ROWS - filled);
+               
+               if (read < CHUNK_ROWS - filled)
+               {
+                  reader.close();
+                  reader = data.open();
+               }
+               
+               filled += read;
+            } // while (filled < CHUNK_ROWS)
+            
+            full.put(rows);
+         } // while (true)
+      } // try
+      catch (InterruptedException e)
+      {
+         return;
+      }
+      catch (IOException e)
+      {
+         failure = e;
+         full.offer(new double[0]);
+      }
+      finally
+      {
+         try
+         {
+            if (reader != null)
+            {
+               reader.close();
+            }
+         }
+         catch (IOException e)
+         {
+         }
+      } // finally
+      
+   } // public void run()
+   
+   
+   @Override
+   public void next(double[] rows, int count)
+   {
+      int width = data.width;
+      int copied = 0;
+      
+      while (copied < count)
+      {
+         if (chunk == null || position == CHUNK_ROWS)
+         {
+            takeChunk();
+         }
+         
+         int n = Math.min(count - copied, CHUNK_ROWS - position);
+         System.arraycopy(chunk, position * width, rows, copied * width, n * width);
+         position += n;
+         copied += n;
+      } // while (copied < count)
+      
+   } // public void next(double[] rows, int count)
+   
+   
+   /**
+    * Gives the current chunk back to the prefetching thread and waits for the next.
+    */
+   private void takeChunk()
+   {
+      if (chunk != null)
+      {
+         free.add(chunk);
+      }
+      
+      try
+      {
+         chunk = full.take();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("interrupted while reading " + data.file, e);
+      }
+      
+      if (failure != null)
+      {
+         throw new IllegalStateException("could not read " + data.file, failure);
+      }
+      
+      position = 0;
+   } // private void takeChunk()
+   
+   
+   @Override
+   public void close()
+   {
+      thread.interrupt();
+   }
+   
+} // class StreamCursor implements Cursor, Runnable
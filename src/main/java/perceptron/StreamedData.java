@@ -0,0 +1,114 @@
+package perceptron;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * Training sets streamed from a text data file, which is only ever held in memory
+ * a few chunks at a time.
+ */
+class StreamedData implements TrainingData
+{
+   final String file;
+   final int width;
+   private final boolean header;
+   private final int size;
+   
+   
+   /**
+    * Counts the training sets of the file and checks for a header line.
+    * 
+    * @param file  the data file
+    * @param width the number of inputs and outputs of each training set
+    * @throws IOException if the file cannot be read or has no training sets
+    */
+   StreamedData(String file, int width) throws IOException
+   {
+      this.file = file;
+      this.width = width;
+      boolean first = true;
+      boolean skip = false;
+      int rows = 0;
+      
+      try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+      {
+         String line;
+         
+         while ((line = reader.readLine()) != null)
+         {
+            if (line.trim().isEmpty())
+            {
+               continue;
+            }
+            
+            if (first)
+            {
+               first = false;
+               skip = !isNumeric(line);
+               
+               if (skip)
+               {
+                  continue;
+               }
+            }
+            
+            rows++;
+         } // while ((line = reader.readLine()) != null)
+      }
+      
+      header = skip;
+      size = rows;
+      
+      if (size == 0)
+      {
+         throw new IOException(file + " has no training sets");
+      }
+   } // StreamedData(String file, int width)
+   
+   
+   @Override
+   public int size()
+   {
+      return size;
+   }
+   
+   
+   @Override
+   public Cursor cursor()
+   {
+      return new StreamCursor(this);
+   }
+   
+   
+   /**
+    * Opens the file and skips to the first training set.
+    * 
+    * @return a reader of training sets from the file
+    * @throws IOException if the file cannot be opened
+    */
+   RowReader open() throws IOException
+   {
+      return new TextRowReader(file, width, header);
+   }
+   
+   
+   /**
+    * @param line the first line of a text data file
+    * @return whether the line starts with a number, so it is not a header
+    */
+   private static boolean isNumeric(String line)
+   {
+      try
+      {
+         Double.parseDouble(new StringTokenizer(line, ", \t").nextToken());
+         return true;
+      }
+      catch (NumberFormatException e)
+      {
+         return false;
+      }
+   } // private static boolean isNumeric(String line)
+   
+} // class StreamedData implements TrainingData
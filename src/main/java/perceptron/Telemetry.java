@@ -0,0 +1,390 @@
+package perceptron;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.function.DoubleSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Publishes metrics of training on the platform MBean server as
+ * Perceptron3:type=Training, so that jconsole or any other JMX client can watch a
+ * run, and logs a sample of them every metricsMillis to the metrics file if one
+ * is set. The training thread only adds up its timings and counters; a sampling
+ * thread turns them into rates. The norm of a weight update is measured on the
+ * first update after each sample, so that the weights are copied only once per
+ * sample.
+ */
+class Telemetry implements DynamicMBean, Runnable
+{
+   private final String[] names = {"Iterations", "SamplesPerSecond", "TotalError", "EpochError",
+                                   "LearningRate", "UpdateNorm", "ForwardMillis", "BackwardMillis",
+                                   "UpdateMillis", "EvaluationMillis", "CheckpointMillis",
+                                   "CheckpointWriteMillis"};
+   volatile int iterations;
+   volatile long forwardNanos;
+   volatile long backwardNanos;
+   volatile long updateNanos;
+   volatile long evaluationNanos;
+   volatile long checkpointNanos;
+   volatile long checkpointWriteNanos;
+   volatile double totalError = Double.NaN;
+   volatile double epochError = Double.NaN;
+   private volatile double updateNorm = Double.NaN;
+   private volatile double samplesPerSecond;
+   private volatile double rate;
+   private volatile boolean updateRequested = true;
+   private boolean measuring;
+   private final double[][] weights;
+   private final double[][] before;
+   private final DoubleSupplier learningRate;
+   private final int metricsMillis;
+   private final long started;
+   private long lastNanos;
+   private int lastIterations;
+   private final ObjectName name;
+   private final PrintWriter log;
+   private final boolean json;
+   private boolean closed;
+   private final Thread thread;
+   
+   
+   /**
+    * Registers the MBean, replacing one left by an earlier run, opens the metrics
+    * file and starts the sampling thread.
+    * 
+    * @param weights       the weights being trained, to measure the norm of updates on
+    * @param learningRate  gives the current learning rate
+    * @param metricsFile   the file to log samples to, or null
+    * @param metricsMillis the milliseconds between samples
+    * @throws JMException if the MBean cannot be registered
+    * @throws IOException if the metrics file cannot be opened
+    */
+   Telemetry(double[][] weights, DoubleSupplier learningRate, String metricsFile, int metricsMillis) 
+      throws JMException, IOException
+   {
+      this.weights = weights;
+      this.learningRate = learningRate;
+      this.metricsMillis = metricsMillis;
+      before = new double[weights.length][];
+      
+      for (int n = 0; n < weights.length; n++)
+      {
+         before[n] = new double[weights[n].length];
+      }
+      
+      started = System.nanoTime();
+      lastNanos = started;
+      rate = learningRate.getAsDouble();
+      
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      name = new ObjectName("Perceptron3:type=Training");
+      
+      if (server.isRegistered(name))
+      {
+         server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+      
+      json = metricsFile != null && (metricsFile.endsWith(".json") || metricsFile.endsWith(".jsonl"));
+      log = metricsFile == null ? null : new PrintWriter(new File(metricsFile));
+      
+      if (log != null && !json)
+      {
+         log.println("millis,iterations,samplesPerSecond,totalError,epochError,learningRate,updateNorm,"
+                     + "forwardMillis,backwardMillis,updateMillis,evaluationMillis,checkpointMillis,"
+                     + "checkpointWriteMillis");
+      }
+      
+      thread = new Thread(this, "telemetry");
+      thread.setDaemon(true);
+      thread.start();
+   } // Telemetry(double[][] weights, DoubleSupplier learningRate, String metricsFile, int metricsMillis)
+   
+   
+   /**
+    * Copies the weights before an update if a sample asked for the norm of the next
+    * one. Only called by the training thread.
+    */
+   void beforeStep()
+   {
+      measuring = updateRequested;
+      
+      if (measuring)
+      {
+         for (int n = 0; n < weights.length; n++)
+         {
+            System.arraycopy(weights[n], 0, before[n], 0, weights[n].length);
+         }
+      }
+   } // void beforeStep()
+   
+   
+   /**
+    * Measures the L2 norm of the update just made, if beforeStep copied the weights.
+    */
+   void afterStep()
+   {
+      if (!measuring)
+      {
+         return;
+      }
+      
+      double sum = 0.0;
+      
+      for (int n = 0; n < weights.length; n++)
+      {
+         double[] w = weights[n];
+         double[] b = before[n];
+         
+         for (int i = 0; i < w.length; i++)
+         {
+            double d = w[i] - b[i];
+            sum += d * d;
+         }
+      } // for (int n = 0; n < weights.length; n++)
+      
+      updateNorm = Math.sqrt(sum);
+      measuring = false;
+      updateRequested = false;
+   } // void afterStep()
+   
+   
+   /**
+    * Samples the metrics every metricsMillis until telemetry is closed.
+    */
+   @Override
+   public void run()
+   {
+      while (true)
+      {
+         synchronized (this)
+         {
+            if (!closed)
+            {
+               try
+               {
+                  wait(metricsMillis);
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+            } // if (!closed)
+            
+            if (closed)
+            {
+               return;
+            }
+         } // synchronized (this)
+         
+         sample();
+      } // while (true)
+      
+   } // public void run()
+   
+   
+   /**
+    * Works out the training sets per second since the last sample, asks for the
+    * norm of the next update and logs a line of the metrics.
+    */
+   private synchronized void sample()
+   {
+      long now = System.nanoTime();
+      int count = iterations;
+      
+      if (count > lastIterations)
+      {
+         samplesPerSecond = (count - lastIterations) * 1e9 / (now - lastNanos);
+      }
+      
+      lastNanos = now;
+      lastIterations = count;
+      rate = learningRate.getAsDouble();
+      updateRequested = true;
+      
+      if (log == null)
+      {
+         return;
+      }
+      
+      Object[] values = values();
+      StringBuilder line = new StringBuilder();
+      
+      if (json)
+      {
+         line.append("{\"millis\":").append((now - started) / 1000000);
+         
+         for (int a = 0; a < names.length; a++)
+         {
+            String key = Character.toLowerCase(names[a].charAt(0)) + names[a].substring(1);
+            Object value = values[a];
+            boolean finite = !(value instanceof Double) || Double.isFinite((Double) value);
+            line.append(",\"").append(key).append("\":").append(finite ? value : "null");
+         }
+         line.append('}');
+      } // if (json)
+      else
+      {
+         line.append((now - started) / 1000000);
+         
+         for (int a = 0; a < names.length; a++)
+         {
+            line.append(',').append(values[a]);
+         }
+      } // else
+      
+      log.println(line);
+      log.flush();
+   } // private synchronized void sample()
+   
+   
+   /**
+    * Reads the current value of every attribute, in the order of names.
+    * 
+    * @return the values
+    */
+   private Object[] values()
+   {
+      return new Object[] {(long) iterations, samplesPerSecond, totalError, epochError, rate, updateNorm,
+                           forwardNanos / 1e6, backwardNanos / 1e6, updateNanos / 1e6,
+                           evaluationNanos / 1e6, checkpointNanos / 1e6, checkpointWriteNanos / 1e6};
+   } // private Object[] values()
+   
+   
+   /**
+    * Takes a last sample, stops the sampling thread, closes the metrics file and
+    * unregisters the MBean.
+    */
+   void close()
+   {
+      synchronized (this)
+      {
+         closed = true;
+         notifyAll();
+      }
+      
+      try
+      {
+         thread.join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      
+      sample();
+      
+      if (log != null)
+      {
+         log.close();
+      }
+      
+      try
+      {
+         ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      }
+      catch (JMException e)
+      {
+         System.out.println("could not unregister " + name + ": " + e);
+      }
+   } // void close()
+   
+   
+   /**
+    * Sums up where the training time went, for the report.
+    * 
+    * @return a line of the phase timings in milliseconds
+    */
+   String summary()
+   {
+      return "telemetry: forward " + forwardNanos / 1000000 + " ms, backward " + backwardNanos / 1000000
+             + " ms, update " + updateNanos / 1000000 + " ms, evaluation " + evaluationNanos / 1000000
+             + " ms, checkpoint " + checkpointNanos / 1000000 + " ms (writer " 
+             + checkpointWriteNanos / 1000000 + " ms)";
+   } // String summary()
+   
+   
+   @Override
+   public Object getAttribute(String attribute) throws AttributeNotFoundException
+   {
+      for (int a = 0; a < names.length; a++)
+      {
+         if (names[a].equals(attribute))
+         {
+            return values()[a];
+         }
+      }
+      
+      throw new AttributeNotFoundException(attribute);
+   } // public Object getAttribute(String attribute) throws AttributeNotFoundException
+   
+   
+   @Override
+   public AttributeList getAttributes(String[] attributes)
+   {
+      AttributeList list = new AttributeList();
+      Object[] values = values();
+      
+      for (String attribute : attributes)
+      {
+         for (int a = 0; a < names.length; a++)
+         {
+            if (names[a].equals(attribute))
+            {
+               list.add(new Attribute(attribute, values[a]));
+            }
+         }
+      } // for (String attribute : attributes)
+      
+      return list;
+   } // public AttributeList getAttributes(String[] attributes)
+   
+   
+   @Override
+   public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+   {
+      throw new AttributeNotFoundException(attribute.getName() + " is read only");
+   }
+   
+   
+   @Override
+   public AttributeList setAttributes(AttributeList attributes)
+   {
+      return new AttributeList();
+   }
+   
+   
+   @Override
+   public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException
+   {
+      throw new ReflectionException(new NoSuchMethodException(action));
+   }
+   
+   
+   @Override
+   public MBeanInfo getMBeanInfo()
+   {
+      MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.length];
+      
+      for (int a = 0; a < names.length; a++)
+      {
+         String type = a == 0 ? Long.class.getName() : Double.class.getName();
+         attributes[a] = new MBeanAttributeInfo(names[a], type, names[a], true, false, false);
+      }
+      
+      return new MBeanInfo(Telemetry.class.getName(), "Metrics of the training run", attributes,
+                           null, null, null);
+   } // public MBeanInfo getMBeanInfo()
+   
+} // class Telemetry implements DynamicMBean, Runnable
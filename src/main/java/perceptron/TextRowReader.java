@@ -0,0 +1,77 @@
+package perceptron;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * Reads training sets from a text data file.
+ */
+class TextRowReader implements RowReader
+{
+   private final BufferedReader reader;
+   private final int width;
+   private boolean header;
+   
+   
+   /**
+    * @param file   the data file
+    * @param width  the number of values on each line
+    * @param header whether the first line is a header to skip
+    * @throws IOException if the file cannot be opened
+    */
+   TextRowReader(String file, int width, boolean header) throws IOException
+   {
+      reader = new BufferedReader(new FileReader(file), Perceptron3.CHECKPOINT_BUFFER);
+      this.width = width;
+      this.header = header;
+   }
+   
+   
+   @Override
+   public int read(double[] rows, int first, int count) throws IOException
+   {
+      int read = 0;
+      String line;
+      
+      while (read < count && (line = reader.readLine()) != null)
+      {
+         if (line.trim().isEmpty())
+         {
+            continue;
+         }
+         
+         if (header)
+         {
+            header = false;
+            continue;
+         }
+         
+         StringTokenizer tokenizer = new StringTokenizer(line, ", \t");
+         
+         if (tokenizer.countTokens() != width)
+         {
+            throw new IOException("expected " + width + " values per training set, not " 
+                                  + tokenizer.countTokens() + ": " + line);
+         }
+         
+         for (int c = 0; c < width; c++)
+         {
+            rows[(first + read) * width + c] = Double.parseDouble(tokenizer.nextToken());
+         }
+         
+         read++;
+      } // while (read < count && (line = reader.readLine()) != null)
+      
+      return read;
+   } // public int read(double[] rows, int first, int count)
+   
+   
+   @Override
+   public void close() throws IOException
+   {
+      reader.close();
+   }
+   
+} // class TextRowReader implements RowReader
@@ -0,0 +1,21 @@
+package perceptron;
+
+/**
+ * A source of training sets, each one its inputs followed by its outputs.
+ */
+interface TrainingData
+{
+   /**
+    * @return the number of training sets
+    */
+   int size();
+   
+   
+   /**
+    * Opens a cursor at the first training set.
+    * 
+    * @return the cursor
+    */
+   Cursor cursor();
+   
+} // interface TrainingData
@@ -0,0 +1,297 @@
+package perceptron;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implements the inner loops of Perceptron3 with explicit SIMD from the incubating
+ * Vector API, using the widest vectors the processor prefers.
+ * 
+ * axpy multiplies and adds lane by lane without fusing, so it matches the scalar
+ * backend exactly. The sums of dot and dot4 are kept in one partial sum per lane and
+ * added together at the end. That reorders the additions, so a sum of n products may
+ * differ from the scalar backend by about n * 2^-52 times the sum of the magnitudes
+ * of the products.
+ * 
+ * The single-precision versions work the same way on float vectors of the same
+ * width, which hold twice as many lanes. The int8 dot product widens each lane of
+ * codes to an int before multiplying, so its sum is exact like the scalar one.
+ * 
+ * This file needs the jdk.incubator.vector module to compile and run. Perceptron3
+ * finds its static methods by name through method handles, and falls back to its
+ * scalar backend when they are missing.
+ */
+class VectorBackend
+{
+   
+   private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+   private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+   private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+   
+   
+   /**
+    * Holds the byte species of the int8 dot product, one byte per int lane, apart
+    * from the other species. With 128 bit vectors that would be a 32 bit shape, which
+    * does not exist, so it is left null and the int8 dot product runs as a plain
+    * loop, without taking the double and float kernels down with it.
+    */
+   private static final class Int8
+   {
+      static final VectorSpecies<Byte> BYTES = bytes();
+      
+      
+      /**
+       * @return the byte species as wide as the int lanes, or null if there is none
+       */
+      private static VectorSpecies<Byte> bytes()
+      {
+         try
+         {
+            return VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * 8));
+         }
+         catch (IllegalArgumentException e)
+         {
+            return null;
+         }
+      } // private static VectorSpecies<Byte> bytes()
+      
+   } // private static final class Int8
+   
+   
+   /**
+    * Adds a multiple of one run of values to another.
+    */
+   public static void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n)
+   {
+      int i = 0;
+      int bound = SPECIES.loopBound(n);
+      
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + i);
+         DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + i);
+         vy.add(vx.mul(a)).intoArray(y, yOff + i);
+      }
+      
+      for (; i < n; i++)
+      {
+         y[yOff + i] += a * x[xOff + i];
+      }
+      
+   } // public static void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n)
+   
+   
+   /**
+    * Sums the products of two runs of values.
+    */
+   public static double dot(double[] x, int xOff, double[] y, int yOff, int n)
+   {
+      int i = 0;
+      int bound = SPECIES.loopBound(n);
+      DoubleVector sum = DoubleVector.zero(SPECIES);
+      
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + i);
+         sum = sum.add(vy.mul(DoubleVector.fromArray(SPECIES, x, xOff + i)));
+      }
+      
+      double total = sum.reduceLanes(VectorOperators.ADD);
+      
+      for (; i < n; i++)
+      {
+         total += y[yOff + i] * x[xOff + i];
+      }
+      
+      return total;
+      
+   } // public static double dot(double[] x, int xOff, double[] y, int yOff, int n)
+   
+   
+   /**
+    * Sums the products of four consecutive rows of values with one run of values,
+    * loading each vector of the run once for all four rows.
+    */
+   public static void dot4(double[] x, int xOff, double[] y, int yOff, int n, double[] out, int oOff)
+   {
+      int i = 0;
+      int bound = SPECIES.loopBound(n);
+      DoubleVector sum0 = DoubleVector.zero(SPECIES);
+      DoubleVector sum1 = DoubleVector.zero(SPECIES);
+      DoubleVector sum2 = DoubleVector.zero(SPECIES);
+      DoubleVector sum3 = DoubleVector.zero(SPECIES);
+      
+      for (; i < bound; i += SPECIES.length())
+      {
+         DoubleVector v = DoubleVector.fromArray(SPECIES, y, yOff + i);
+         sum0 = sum0.add(v.mul(DoubleVector.fromArray(SPECIES, x, xOff + i)));
+         sum1 = sum1.add(v.mul(DoubleVector.fromArray(SPECIES, x, xOff + n + i)));
+         sum2 = sum2.add(v.mul(DoubleVector.fromArray(SPECIES, x, xOff + 2 * n + i)));
+         sum3 = sum3.add(v.mul(DoubleVector.fromArray(SPECIES, x, xOff + 3 * n + i)));
+      }
+      
+      double total0 = sum0.reduceLanes(VectorOperators.ADD);
+      double total1 = sum1.reduceLanes(VectorOperators.ADD);
+      double total2 = sum2.reduceLanes(VectorOperators.ADD);
+      double total3 = sum3.reduceLanes(VectorOperators.ADD);
+      
+      for (; i < n; i++)
+      {
+         double v = y[yOff + i];
+         total0 += v * x[xOff + i];
+         total1 += v * x[xOff + n + i];
+         total2 += v * x[xOff + 2 * n + i];
+         total3 += v * x[xOff + 3 * n + i];
+      }
+      
+      out[oOff] = total0;
+      out[oOff + 1] = total1;
+      out[oOff + 2] = total2;
+      out[oOff + 3] = total3;
+      
+   } // public static void dot4(...)
+   
+   
+   /**
+    * Adds a multiple of one run of single-precision values to another.
+    */
+   public static void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n)
+   {
+      int i = 0;
+      int bound = FLOATS.loopBound(n);
+      
+      for (; i < bound; i += FLOATS.length())
+      {
+         FloatVector vx = FloatVector.fromArray(FLOATS, x, xOff + i);
+         FloatVector vy = FloatVector.fromArray(FLOATS, y, yOff + i);
+         vy.add(vx.mul(a)).intoArray(y, yOff + i);
+      }
+      
+      for (; i < n; i++)
+      {
+         y[yOff + i] += a * x[xOff + i];
+      }
+      
+   } // public static void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n)
+   
+   
+   /**
+    * Sums the products of two runs of single-precision values.
+    */
+   public static float dot(float[] x, int xOff, float[] y, int yOff, int n)
+   {
+      int i = 0;
+      int bound = FLOATS.loopBound(n);
+      FloatVector sum = FloatVector.zero(FLOATS);
+      
+      for (; i < bound; i += FLOATS.length())
+      {
+         FloatVector vy = FloatVector.fromArray(FLOATS, y, yOff + i);
+         sum = sum.add(vy.mul(FloatVector.fromArray(FLOATS, x, xOff + i)));
+      }
+      
+      float total = sum.reduceLanes(VectorOperators.ADD);
+      
+      for (; i < n; i++)
+      {
+         total += y[yOff + i] * x[xOff + i];
+      }
+      
+      return total;
+      
+   } // public static float dot(float[] x, int xOff, float[] y, int yOff, int n)
+   
+   
+   /**
+    * Sums the products of four consecutive rows of single-precision values with one
+    * run of values, loading each vector of the run once for all four rows.
+    */
+   public static void dot4(float[] x, int xOff, float[] y, int yOff, int n, float[] out, int oOff)
+   {
+      int i = 0;
+      int bound = FLOATS.loopBound(n);
+      FloatVector sum0 = FloatVector.zero(FLOATS);
+      FloatVector sum1 = FloatVector.zero(FLOATS);
+      FloatVector sum2 = FloatVector.zero(FLOATS);
+      FloatVector sum3 = FloatVector.zero(FLOATS);
+      
+      for (; i < bound; i += FLOATS.length())
+      {
+         FloatVector v = FloatVector.fromArray(FLOATS, y, yOff + i);
+         sum0 = sum0.add(v.mul(FloatVector.fromArray(FLOATS, x, xOff + i)));
+         sum1 = sum1.add(v.mul(FloatVector.fromArray(FLOATS, x, xOff + n + i)));
+         sum2 = sum2.add(v.mul(FloatVector.fromArray(FLOATS, x, xOff + 2 * n + i)));
+         sum3 = sum3.add(v.mul(FloatVector.fromArray(FLOATS, x, xOff + 3 * n + i)));
+      }
+      
+      float total0 = sum0.reduceLanes(VectorOperators.ADD);
+      float total1 = sum1.reduceLanes(VectorOperators.ADD);
+      float total2 = sum2.reduceLanes(VectorOperators.ADD);
+      float total3 = sum3.reduceLanes(VectorOperators.ADD);
+      
+      for (; i < n; i++)
+      {
+         float v = y[yOff + i];
+         total0 += v * x[xOff + i];
+         total1 += v * x[xOff + n + i];
+         total2 += v * x[xOff + 2 * n + i];
+         total3 += v * x[xOff + 3 * n + i];
+      }
+      
+      out[oOff] = total0;
+      out[oOff + 1] = total1;
+      out[oOff + 2] = total2;
+      out[oOff + 3] = total3;
+      
+   } // public static void dot4(float[] ...)
+   
+   
+   /**
+    * Sums the products of two runs of int8 codes, loading one code per int lane, or
+    * one at a time where there is no byte shape to load them with.
+    */
+   public static int dot(byte[] x, int xOff, byte[] y, int yOff, int n)
+   {
+      VectorSpecies<Byte> bytes = Int8.BYTES;
+      int i = 0;
+      int total = 0;
+      
+      if (bytes != null)
+      {
+         int bound = bytes.loopBound(n);
+         IntVector sum = IntVector.zero(INTS);
+         
+         for (; i < bound; i += bytes.length())
+         {
+            IntVector vx = (IntVector) ByteVector.fromArray(bytes, x, xOff + i).castShape(INTS, 0);
+            IntVector vy = (IntVector) ByteVector.fromArray(bytes, y, yOff + i).castShape(INTS, 0);
+            sum = sum.add(vy.mul(vx));
+         }
+         
+         total = sum.reduceLanes(VectorOperators.ADD);
+      } // if (bytes != null)
+      
+      for (; i < n; i++)
+      {
+         total += y[yOff + i] * x[xOff + i];
+      }
+      
+      return total;
+      
+   } // public static int dot(byte[] x, int xOff, byte[] y, int yOff, int n)
+   
+   
+   /**
+    * Names the backend and its vector width.
+    */
+   public static String name()
+   {
+      return "vector (" + SPECIES.vectorBitSize() + " bit)";
+   }
+   
+} // class VectorBackend
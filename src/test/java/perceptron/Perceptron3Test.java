@@ -0,0 +1,227 @@
+package perceptron;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Trains and runs small networks from input files written to a temporary directory.
+ */
+class Perceptron3Test
+{
+   @TempDir
+   Path directory;
+   
+   
+   /**
+    * Writes an input file for a 2-5-4-3 network with random training sets, always the
+    * same ones, and no checkpoints until training ends.
+    * 
+    * @param name       the name of the input file, which also names its output file
+    * @param preload    R for random weights, or P to preload them from read
+    * @param sets       the number of training sets
+    * @param iterations the maximum number of iterations
+    * @param read       the file to preload weights from
+    * @param settings   optional settings to add, one per line
+    * @return the input file
+    * @throws IOException if the file cannot be written
+    */
+   private String input(String name, String preload, int sets, int iterations, String read, String... settings)
+      throws IOException
+   {
+      Random random = new Random(sets);
+      List<String> lines = new ArrayList<>(Arrays.asList("T", preload, "4", "2 5 4 3", String.valueOf(sets)));
+      
+      for (int s = 0; s < sets; s++)
+      {
+         lines.add(random.nextDouble() + " " + random.nextDouble() + " " + random.nextInt(2) + " "
+                   + random.nextInt(2) + " " + random.nextInt(2));
+      }
+      
+      lines.addAll(Arrays.asList(String.valueOf(iterations), "0", "0.3", "-1 1", "1000000",
+                                 directory.resolve(name + ".out").toString(), read, "verbosity summary"));
+      lines.addAll(Arrays.asList(settings));
+      Path file = directory.resolve(name + ".txt");
+      Files.write(file, lines);
+      return file.toString();
+   } // private String input(String name, String preload, int sets, int iterations, String read, String... settings)
+   
+   
+   /**
+    * @param input the input file
+    * @return the network read from it
+    */
+   private static Perceptron3 read(String input)
+   {
+      Perceptron3 network = new Perceptron3();
+      network.setOutputFileName(input + ".out");
+      network.readData(input);
+      return network;
+   }
+   
+   
+   /**
+    * Writes random weights for the networks of input() to a binary checkpoint, so
+    * that several runs can start from the same ones.
+    * 
+    * @return the checkpoint
+    * @throws IOException if it cannot be written
+    */
+   private String seed() throws IOException
+   {
+      Perceptron3 network = read(input("seed", "R", 7, 0, "none"));
+      String file = directory.resolve("seed.bin").toString();
+      network.saveBinaryWeights(file, network.weights, 0);
+      return file;
+   }
+   
+   
+   @Test
+   void readDataRejectsUnknownSettings() throws IOException
+   {
+      for (String setting : new String[] {"verbosity loud", "loss hinge", "checkpointFormat bniary", "sigmoid tabel",
+                                          "telemetry yes", "precision half"})
+      {
+         String file = input("bad", "R", 4, 10, "none", setting);
+         assertThrows(IllegalArgumentException.class, () -> read(file), setting);
+      }
+   } // void readDataRejectsUnknownSettings()
+   
+   
+   @Test
+   void binaryCheckpointRoundTrips() throws IOException
+   {
+      Perceptron3 network = read(input("checkpoint", "R", 4, 10, "none"));
+      String file = directory.resolve("weights.bin").toString();
+      network.saveBinaryWeights(file, network.weights, 42);
+      double[][] w = new double[network.weights.length][];
+      
+      for (int n = 0; n < w.length; n++)
+      {
+         w[n] = new double[network.weights[n].length];
+      }
+      
+      assertTrue(Perceptron3.isBinaryCheckpoint(file));
+      assertEquals(42, network.readCheckpoint(file, w));
+      
+      for (int n = 0; n < w.length; n++)
+      {
+         assertArrayEquals(network.weights[n], w[n]);
+      }
+   } // void binaryCheckpointRoundTrips()
+   
+   
+   @Test
+   void threadsTrainTheSameWeights() throws IOException
+   {
+      String seed = seed();
+      Perceptron3 one = read(input("one", "P", 300, 40, seed, "batchSize 64", "optimizer adam", "threads 1"));
+      Perceptron3 three = read(input("three", "P", 300, 40, seed, "batchSize 64", "optimizer adam", "threads 3"));
+      one.train();
+      three.train();
+      
+      for (int n = 0; n < one.weights.length; n++)
+      {
+         assertArrayEquals(one.weights[n], three.weights[n]);
+      }
+   } // void threadsTrainTheSameWeights()
+   
+   
+   @Test
+   void resumedRunMatchesStraightRun() throws IOException
+   {
+      String seed = seed();
+      String first = directory.resolve("first.bin").toString();
+      Perceptron3 straight = read(input("straight", "P", 7, 604, seed, "batchSize 2", "optimizer adam",
+                                        "checkpointFormat binary"));
+      straight.train();
+      read(input("first", "P", 7, 302, seed, "batchSize 2", "optimizer adam", "checkpointFormat binary",
+                 "checkpointFile " + first)).train();
+      Perceptron3 resumed = read(input("resumed", "P", 7, 604, first, "batchSize 2", "optimizer adam",
+                                       "checkpointFormat binary"));
+      resumed.train();
+      
+      for (int n = 0; n < straight.weights.length; n++)
+      {
+         assertArrayEquals(straight.weights[n], resumed.weights[n]);
+      }
+   } // void resumedRunMatchesStraightRun()
+   
+   
+   @Test
+   void predictorMatchesForwardPass() throws IOException
+   {
+      Perceptron3 network = read(input("predictor", "R", 8, 10, "none"));
+      Perceptron3.Workspace ws = network.new Workspace(8, false);
+      double[] rows = new double[8 * 5];
+      double[] in = new double[8 * 2];
+      double[] out = new double[8 * 3];
+      Cursor cursor = network.trainingData.cursor();
+      cursor.next(rows, 8);
+      cursor.close();
+      
+      for (int b = 0; b < 8; b++)
+      {
+         System.arraycopy(rows, b * 5, in, b * 2, 2);
+      }
+      
+      network.forwardPass(rows, 0, 8, ws);
+      network.predictor().predictBatch(in, out, 8);
+      
+      for (int i = 0; i < 8 * 3; i++)
+      {
+         assertEquals(ws.activations[3][i], out[i]);
+      }
+   } // void predictorMatchesForwardPass()
+   
+   
+   @Test
+   void float32StaysCloseToDouble() throws IOException
+   {
+      Perceptron3 network = read(input("double", "R", 8, 10, "none"));
+      Perceptron3 single = read(input("single", "R", 8, 10, "none", "precision float32", "batchSize 8"));
+      
+      for (int n = 0; n < network.weights.length; n++)
+      {
+         System.arraycopy(network.weights[n], 0, single.weights[n], 0, network.weights[n].length);
+      }
+      
+      single.roundWeights();
+      Perceptron3.Workspace ws = network.new Workspace(8, false);
+      Perceptron3.Workspace ws32 = single.new Workspace(8, true);
+      double[] rows = new double[8 * 5];
+      Cursor cursor = network.trainingData.cursor();
+      cursor.next(rows, 8);
+      cursor.close();
+      network.forwardPass(rows, 0, 8, ws);
+      single.forwardPass(rows, 0, 8, ws32);
+      
+      for (int i = 0; i < 8 * 3; i++)
+      {
+         assertEquals(ws.activations[3][i], ws32.activations32[3][i], 1e-6);
+      }
+   } // void float32StaysCloseToDouble()
+   
+   
+   @Test
+   void tableSigmoidStaysCloseToExact()
+   {
+      for (int i = 0; i <= 1 << 16; i++)
+      {
+         double x = -20.0 + 40.0 * i / (1 << 16);
+         assertEquals(1.0 / (1.0 + Math.exp(-x)), Perceptron3.tableSigmoid(x), 3e-6);
+      }
+   } // void tableSigmoidStaysCloseToExact()
+   
+} // class Perceptron3Test
@@ -0,0 +1,119 @@
+package perceptron;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Scores over HTTP on the loopback address, on any free port.
+ */
+class ScoringServerTest
+{
+   @TempDir
+   Path directory;
+   
+   private final HttpClient client = HttpClient.newHttpClient();
+   private ScoringServer server;
+   
+   
+   @AfterEach
+   void tearDown()
+   {
+      if (server != null)
+      {
+         server.close();
+      }
+   }
+   
+   
+   /**
+    * Reads a network with random weights and no training sets.
+    * 
+    * @param layers the number of units in each layer, separated by spaces
+    * @return the predictor of the network
+    * @throws IOException if the input file cannot be written
+    */
+   private Perceptron3.Predictor predictor(String layers) throws IOException
+   {
+      Path input = directory.resolve("input.txt");
+      Files.write(input, Arrays.asList("S", "R", String.valueOf(layers.split(" ").length), layers, "0", "10", "0",
+                                       "0.3", "-1 1", "10", directory.resolve("output.txt").toString(), "none"));
+      Perceptron3 network = new Perceptron3();
+      network.readData(input.toString());
+      return network.predictor();
+   } // private Perceptron3.Predictor predictor(String layers)
+   
+   
+   /**
+    * @param path the path to POST to
+    * @param body the body of the request
+    * @return the answer
+    * @throws Exception if the request fails
+    */
+   private HttpResponse<String> post(String path, String body) throws Exception
+   {
+      HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path))
+                                       .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+      return client.send(request, HttpResponse.BodyHandlers.ofString());
+   }
+   
+   
+   @Test
+   void scoresLikeThePredictor() throws Exception
+   {
+      Perceptron3.Predictor predictor = predictor("2 5 4 3");
+      server = new ScoringServer(predictor, "random", 0, 4, 200);
+      double[] out = new double[3];
+      predictor.predict(new double[] {0.25, 0.75}, out);
+      
+      HttpResponse<String> response = post("/predict", "0.25, 0.75");
+      assertEquals(200, response.statusCode());
+      assertEquals("1", response.headers().firstValue("X-Model-Version").orElse(""));
+      assertEquals(out[0] + " " + out[1] + " " + out[2], response.body().trim());
+      
+      assertEquals(400, post("/predict", "0.25").statusCode());
+      assertTrue(server.stats().startsWith("requests 1\n"));
+   } // void scoresLikeThePredictor()
+   
+   
+   @Test
+   void answersFailedBatchesAndCarriesOn() throws Exception
+   {
+      server = new ScoringServer(predictor("2 5 4 3"), "random", 0, 4, 200);
+      server.publish(predictor("2 5 4 50"), "wrong", 0);
+      
+      HttpResponse<String> failed = post("/predict", "0.25 0.75");
+      assertEquals(500, failed.statusCode());
+      assertTrue(failed.body().startsWith("scoring failed: "));
+      
+      assertEquals(200, post("/rollback", "").statusCode());
+      HttpResponse<String> response = post("/predict", "0.25 0.75");
+      assertEquals(200, response.statusCode());
+      assertEquals("1", response.headers().firstValue("X-Model-Version").orElse(""));
+   } // void answersFailedBatchesAndCarriesOn()
+   
+   
+   @Test
+   void versionsOnlyCountUp() throws Exception
+   {
+      Perceptron3.Predictor predictor = predictor("2 5 4 3");
+      server = new ScoringServer(predictor, "random", 0, 4, 200);
+      assertEquals(2, server.publish(predictor, "second", 10).version);
+      assertEquals(200, post("/rollback", "").statusCode());
+      assertEquals(3, server.publish(predictor, "third", 20).version);
+      assertEquals(200, post("/rollback", "").statusCode());
+      assertEquals(409, post("/rollback", "").statusCode());
+   } // void versionsOnlyCountUp()
+
+} // class ScoringServerTest